@@ -0,0 +1,125 @@
+package MrKagabond.painter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares JMH results against a saved baseline, both in JMH's CSV format
+ * (-rf csv), and prints each benchmark's change. A benchmark is a regression
+ * when its score is worse than the baseline's by more than the threshold,
+ * in percent, and by more than the two scores' errors together; lower is
+ * better except for throughput.
+ *
+ * Usage: BaselineCompare baseline.csv results.csv [threshold]
+ *
+ * Exits with 1 if anything regressed. Baselines are only comparable on the
+ * machine and JVM they were taken on.
+ */
+public class BaselineCompare {
+
+	private static class Result {
+		String mode, unit;
+		double score, error;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: BaselineCompare baseline.csv results.csv [threshold]");
+			System.exit(2);
+		}
+		double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+		if (!Files.exists(Paths.get(args[0]))) {
+			System.out.println("No baseline in " + args[0]);
+			return;
+		}
+		Map<String, Result> baseline = read(args[0]);
+		Map<String, Result> results = read(args[1]);
+
+		int regressions = 0;
+		for (Map.Entry<String, Result> entry : results.entrySet()) {
+			Result r = entry.getValue();
+			Result b = baseline.get(entry.getKey());
+			if (b == null || !b.unit.equals(r.unit)) {
+				System.out.printf("%-70s %12.3f %-7s (no baseline)%n", entry.getKey(), r.score, r.unit);
+				continue;
+			}
+			double change = 100 * (r.score - b.score) / b.score;
+			double worse = r.mode.equals("thrpt") ? -change : change;
+			// Changes within the two error bars are noise, whatever their size
+			boolean significant = Double.isNaN(r.error + b.error)
+					|| Math.abs(r.score - b.score) > r.error + b.error;
+			String verdict = "";
+			if (worse > threshold && significant) {
+				verdict = "REGRESSION";
+				regressions++;
+			} else if (worse < -threshold && significant) {
+				verdict = "improved";
+			}
+			System.out.printf("%-70s %12.3f %-7s %+7.1f%% %s%n", entry.getKey(), r.score, r.unit, change, verdict);
+		}
+		System.out.printf("%d of %d benchmarks regressed by more than %.0f%%%n", regressions, results.size(),
+				threshold);
+		System.exit(regressions > 0 ? 1 : 0);
+	}
+
+	/**
+	 * @return the results in file, by benchmark name and parameters
+	 */
+	private static Map<String, Result> read(String file) throws IOException {
+		List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+		Map<String, Result> results = new LinkedHashMap<String, Result>();
+		if (lines.isEmpty())
+			return results;
+		List<String> header = split(lines.get(0));
+		for (String line : lines.subList(1, lines.size())) {
+			if (line.trim().isEmpty())
+				continue;
+			List<String> fields = split(line);
+			StringBuilder key = new StringBuilder(fields.get(header.indexOf("Benchmark")));
+			// Parameters by name, so the column order does not matter; a
+			// benchmark without one has it empty
+			for (int i = 0; i < header.size(); i++) {
+				if (header.get(i).startsWith("Param: ") && !fields.get(i).isEmpty()) {
+					key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+				}
+			}
+			Result r = new Result();
+			r.mode = fields.get(header.indexOf("Mode"));
+			r.unit = fields.get(header.indexOf("Unit"));
+			r.score = Double.parseDouble(fields.get(header.indexOf("Score")));
+			r.error = Double.parseDouble(fields.get(header.indexOf("Score Error (99.9%)")));
+			results.put(key.toString(), r);
+		}
+		return results;
+	}
+
+	private static List<String> split(String line) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (c == ',' && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+}
@@ -0,0 +1,55 @@
+package MrKagabond.painter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Repeatable drawings for the JMH benchmarks: circles, rectangles and
+ * squiggles on a SIZE x SIZE canvas, with colors and fill taken from the
+ * seed rather than Math.random. There are no polygons, so the drawings
+ * survive a round trip through the text format.
+ */
+class BenchDrawings {
+	static final int SIZE = 500;
+	static final int POINTS = 100; // per squiggle
+	static final long SEED = 42;
+
+	static List<PaintCommand> create(int shapes) {
+		Random random = new Random(SEED);
+		ArrayList<PaintCommand> commands = new ArrayList<PaintCommand>(shapes);
+		for (int i = 0; i < shapes; i++) {
+			PaintCommand c;
+			switch (i % 5) {
+			case 0:
+				c = new CircleCommand(new Point(random.nextInt(SIZE), random.nextInt(SIZE)), random.nextInt(50));
+				break;
+			case 1:
+				c = new RectangleCommand(new Point(random.nextInt(SIZE), random.nextInt(SIZE)),
+						new Point(random.nextInt(SIZE), random.nextInt(SIZE)));
+				break;
+			default:
+				SquiggleCommand squiggle = new SquiggleCommand();
+				int x = random.nextInt(SIZE), y = random.nextInt(SIZE);
+				for (int j = 0; j < POINTS; j++) {
+					x = Math.max(0, Math.min(SIZE - 1, x + random.nextInt(9) - 4));
+					y = Math.max(0, Math.min(SIZE - 1, y + random.nextInt(9) - 4));
+					squiggle.add(x, y);
+				}
+				c = squiggle;
+			}
+			c.setColor(Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+			c.setFill(random.nextInt(4) == 0);
+			commands.add(c);
+		}
+		return commands;
+	}
+
+	static PaintModel model(int shapes) {
+		PaintModel model = new PaintModel();
+		model.addCommands(create(shapes));
+		return model;
+	}
+}
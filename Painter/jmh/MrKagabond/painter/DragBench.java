@@ -0,0 +1,99 @@
+package MrKagabond.painter;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.event.EventType;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+
+/**
+ * Replays one stroke of mouse events through the ShapeManipulatorStrategy
+ * for a shape, on top of a BenchDrawings drawing, then takes the new command
+ * off again so every invocation sees the same model. The score is per
+ * event.
+ *
+ * Drag strategies get a press, drags and a release, the polygon strategy
+ * moves with a press every 8 events and a secondary press to finish.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DragBench {
+	static final int EVENTS = 256;
+
+	@Param({ "Circle", "Rectangle", "Squiggle", "Polygon" })
+	public String shape;
+
+	@Param({ "100", "10000" })
+	public int shapes;
+
+	private PaintModel model;
+	private ShapeManipulatorStrategy strategy;
+	private MouseEvent[] events;
+
+	private static MouseEvent event(EventType<MouseEvent> type, MouseButton button, int x, int y) {
+		boolean primary = button == MouseButton.PRIMARY, secondary = button == MouseButton.SECONDARY;
+		return new MouseEvent(type, x, y, x, y, button, 1, false, false, false, false, primary, false, secondary,
+				false, false, false, null);
+	}
+
+	@Setup
+	public void setup() {
+		this.model = BenchDrawings.model(this.shapes);
+		this.model.addListener(event -> { });
+		// The factory compares names by identity
+		this.strategy = ShapeManipulatorFactory.create(this.shape.intern(), this.model);
+
+		boolean polygon = this.shape.equals("Polygon");
+		Random random = new Random(BenchDrawings.SEED);
+		ArrayList<MouseEvent> events = new ArrayList<MouseEvent>();
+		int x = 250, y = 250;
+		events.add(event(MouseEvent.MOUSE_PRESSED, MouseButton.PRIMARY, x, y));
+		for (int i = 1; i < EVENTS - 1; i++) {
+			x = Math.max(0, Math.min(BenchDrawings.SIZE - 1, x + random.nextInt(9) - 4));
+			y = Math.max(0, Math.min(BenchDrawings.SIZE - 1, y + random.nextInt(9) - 4));
+			if (!polygon) {
+				events.add(event(MouseEvent.MOUSE_DRAGGED, MouseButton.PRIMARY, x, y));
+			} else if (i % 8 == 0) {
+				events.add(event(MouseEvent.MOUSE_PRESSED, MouseButton.PRIMARY, x, y));
+			} else {
+				events.add(event(MouseEvent.MOUSE_MOVED, MouseButton.NONE, x, y));
+			}
+		}
+		if (polygon) {
+			events.add(event(MouseEvent.MOUSE_PRESSED, MouseButton.SECONDARY, x, y));
+		} else {
+			events.add(event(MouseEvent.MOUSE_RELEASED, MouseButton.PRIMARY, x, y));
+		}
+		this.events = events.toArray(new MouseEvent[events.size()]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS)
+	public int replay() {
+		for (MouseEvent e : this.events) {
+			this.strategy.handle(e);
+		}
+		int count = this.model.getCommandCount();
+		this.model.removeLastCommand();
+		return count;
+	}
+}
@@ -0,0 +1,71 @@
+package MrKagabond.painter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading a BenchDrawings drawing into a model with a listener attached,
+ * adding the shapes one by one against adding them as one batch. The model
+ * is reset after each invocation, which frees the commands for the next.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBench {
+
+	@Param({ "1000", "10000" })
+	public int shapes;
+
+	private List<PaintCommand> commands;
+	private PaintModel model;
+	private int events;
+
+	@Setup
+	public void setup() {
+		this.commands = BenchDrawings.create(this.shapes);
+	}
+
+	@TearDown(Level.Invocation)
+	public void reset() {
+		this.model.reset();
+	}
+
+	private PaintModel listenedModel() {
+		this.events = 0;
+		this.model = new PaintModel();
+		this.model.addListener(event -> this.events++);
+		return this.model;
+	}
+
+	@Benchmark
+	public int addCommand() {
+		PaintModel model = this.listenedModel();
+		for (int i = 0; i < this.commands.size(); i++) {
+			model.addCommand(this.commands.get(i));
+		}
+		return this.events;
+	}
+
+	@Benchmark
+	public int addCommands() {
+		this.listenedModel().addCommands(this.commands);
+		return this.events;
+	}
+}
@@ -0,0 +1,77 @@
+package MrKagabond.painter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PaintFileParser on a text save file of a BenchDrawings drawing: from a
+ * BufferedReader over bytes already in memory, and from the file, which is
+ * memory-mapped and parsed in parallel once it is large.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBench {
+
+	@Param({ "100", "1000", "10000" })
+	public int shapes;
+
+	private File file;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		this.file = File.createTempFile("parse-bench", ".paint");
+		try (OutputStream out = new FileOutputStream(this.file)) {
+			PaintFileWriter.save(out, BenchDrawings.create(this.shapes));
+		}
+		this.bytes = Files.readAllBytes(this.file.toPath());
+		if (this.parseReader().getCommandCount() != this.shapes || this.parseFile().getCommandCount() != this.shapes)
+			throw new IllegalStateException("the drawing did not parse");
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.file.delete();
+	}
+
+	@Benchmark
+	public PaintModel parseReader() throws IOException {
+		PaintModel model = new PaintModel();
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new ByteArrayInputStream(this.bytes), StandardCharsets.US_ASCII));
+		new PaintFileParser().parse(reader, model);
+		return model;
+	}
+
+	@Benchmark
+	public PaintModel parseFile() throws IOException {
+		PaintModel model = new PaintModel();
+		new PaintFileParser().parse(this.file, model);
+		return model;
+	}
+}
@@ -0,0 +1,82 @@
+package MrKagabond.painter;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A stroke's vertices held as an ArrayList of Point, as squiggles used to,
+ * against a PointBuffer: filling one point by point and reading it back.
+ * The score is per point. Run with -prof gc for the bytes each point costs,
+ * gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PointStorageBench {
+	static final int POINTS = 100000;
+
+	private ArrayList<Point> list;
+	private PointBuffer buffer;
+
+	@Setup
+	public void setup() {
+		this.list = this.fillList();
+		this.buffer = this.fillBuffer();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public ArrayList<Point> fillList() {
+		ArrayList<Point> list = new ArrayList<Point>();
+		for (int i = 0; i < POINTS; i++) {
+			list.add(new Point(i % 500, i / 500));
+		}
+		return list;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public PointBuffer fillBuffer() {
+		PointBuffer buffer = new PointBuffer();
+		for (int i = 0; i < POINTS; i++) {
+			buffer.add(i % 500, i / 500);
+		}
+		return buffer;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public long readList() {
+		long sum = 0;
+		for (int i = 0; i < this.list.size(); i++) {
+			Point p = this.list.get(i);
+			sum += p.x + p.y;
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public long readBuffer() {
+		long sum = 0;
+		for (int i = 0; i < this.buffer.size(); i++) {
+			sum += this.buffer.getX(i) + this.buffer.getY(i);
+		}
+		return sum;
+	}
+}
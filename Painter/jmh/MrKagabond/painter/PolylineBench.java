@@ -0,0 +1,69 @@
+package MrKagabond.painter;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * A long squiggle issued to a canvas GraphicsContext, one strokeLine per
+ * segment against a single strokePolyline. This is the FX thread side only:
+ * a canvas queues what it is given and rasterizes it later on the render
+ * thread, and clearRect drops the queue. The score is per segment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dprism.order=sw")
+public class PolylineBench {
+	static final int POINTS = 10000;
+
+	private SquiggleCommand squiggle;
+	private GraphicsContext g;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(BenchDrawings.SEED);
+		this.squiggle = new SquiggleCommand();
+		int x = 250, y = 250;
+		for (int i = 0; i < POINTS; i++) {
+			x = Math.max(0, Math.min(BenchDrawings.SIZE - 1, x + random.nextInt(7) - 3));
+			y = Math.max(0, Math.min(BenchDrawings.SIZE - 1, y + random.nextInt(7) - 3));
+			this.squiggle.add(x, y);
+		}
+		this.g = new Canvas(BenchDrawings.SIZE, BenchDrawings.SIZE).getGraphicsContext2D();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS - 1)
+	public void strokeLines() {
+		PointBuffer points = this.squiggle.getPointBuffer();
+		this.g.setStroke(this.squiggle.getColor());
+		for (int i = 0; i < points.size() - 1; i++) {
+			this.g.strokeLine(points.getX(i), points.getY(i), points.getX(i + 1), points.getY(i + 1));
+		}
+		this.g.clearRect(0, 0, BenchDrawings.SIZE, BenchDrawings.SIZE);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS - 1)
+	public void strokePolyline() {
+		this.squiggle.execute(this.g);
+		this.g.clearRect(0, 0, BenchDrawings.SIZE, BenchDrawings.SIZE);
+	}
+}
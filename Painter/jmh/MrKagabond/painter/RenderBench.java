@@ -0,0 +1,64 @@
+package MrKagabond.painter;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PaintModel.executeAll of a BenchDrawings drawing without the FX toolkit:
+ * into a CountingPaintRenderer, which is the cost of walking the model and
+ * issuing draw calls, and into a BufferedImage with Java2DPaintRenderer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBench {
+
+	@Param({ "100", "1000", "10000" })
+	public int shapes;
+
+	private PaintModel model;
+	private CountingPaintRenderer counter;
+	private Java2DPaintRenderer image;
+
+	@Setup
+	public void setup() {
+		this.model = BenchDrawings.model(this.shapes);
+		this.counter = new CountingPaintRenderer();
+		this.image = new Java2DPaintRenderer(
+				new BufferedImage(BenchDrawings.SIZE, BenchDrawings.SIZE, BufferedImage.TYPE_INT_ARGB_PRE));
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.image.dispose();
+	}
+
+	@Benchmark
+	public long executeAllCounting() {
+		this.counter.reset();
+		this.model.executeAll(this.counter);
+		return this.counter.getDrawCalls();
+	}
+
+	@Benchmark
+	public void executeAllImage() {
+		this.image.getGraphics().clearRect(0, 0, BenchDrawings.SIZE, BenchDrawings.SIZE);
+		this.model.executeAll(this.image);
+	}
+}
@@ -0,0 +1,167 @@
+package MrKagabond.painter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving a BenchDrawings drawing, in the text format through
+ * PaintModel.save and in the binary format, to outputs that only count what
+ * they are given, so this is the serializer alone. The text format is also
+ * saved as PaintModel used to, before PaintFileWriter, and by
+ * PaintFileWriter in parallel and compressed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveBench {
+
+	@Param({ "100", "1000", "10000" })
+	public int shapes;
+
+	private List<PaintCommand> commands;
+
+	private static class CountingWriter extends Writer {
+		long count = 0;
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			this.count += len;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static class CountingStream extends OutputStream {
+		long count = 0;
+
+		@Override
+		public void write(int b) {
+			this.count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			this.count += len;
+		}
+	}
+
+	// The save PaintModel had before PaintFileWriter
+	private static final CircleCommand CIRCLE = new CircleCommand(null, 0);
+	private static final PolygonCommand POLYGON = new PolygonCommand();
+	private static final RectangleCommand RECTANGLE = new RectangleCommand(null, null);
+	private static final SquiggleCommand SQUIGGLE = new SquiggleCommand();
+
+	private static void oldSave(PrintWriter writer, List<PaintCommand> commands) {
+		writer.print("PaintSaveFileVersion1.0\n");
+		for (PaintCommand c : commands) {
+			if (c.getClass().isInstance(CIRCLE)) {
+				writer.print("Circle\n");
+				writer.print(c.displayGeneralDetails());
+				writer.print("\tcenter:" + ((CircleCommand) c).getCentre() + "\n");
+				writer.print("\tradius:" + ((CircleCommand) c).getRadius() + "\n");
+				writer.print("End Circle\n");
+			} else if (c.getClass().isInstance(POLYGON)) {
+				writer.print("Polygon\n");
+				writer.print(c.displayGeneralDetails());
+				writer.print("\tpoints:\n");
+				for (Point p : ((PolygonCommand) c).getPoints()) {
+					writer.print("\t\tpoint: " + p.toString() + "\n");
+				}
+				writer.print("\tend points\n");
+				writer.print("End Polygon\n");
+			} else if (c.getClass().isInstance(RECTANGLE)) {
+				writer.print("Rectangle\n");
+				writer.print(c.displayGeneralDetails());
+				writer.print("\tp1:" + ((RectangleCommand) c).getP1() + "\n");
+				writer.print("\tp2:" + ((RectangleCommand) c).getP2() + "\n");
+				writer.print("End Rectangle\n");
+			} else if (c.getClass().isInstance(SQUIGGLE)) {
+				writer.print("Squiggle\n");
+				writer.print(c.displayGeneralDetails());
+				writer.print("\tpoints\n");
+				for (Point p : ((SquiggleCommand) c).getPoints()) {
+					writer.print("\t\tpoint:" + p.toString() + "\n");
+				}
+				writer.print("\tend points\n");
+				writer.print("End Squiggle\n");
+			}
+		}
+		writer.print("EndPaintSaveFile\n");
+		writer.close();
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		this.commands = BenchDrawings.model(this.shapes).snapshot();
+
+		ByteArrayOutputStream old = new ByteArrayOutputStream(), current = new ByteArrayOutputStream();
+		oldSave(new PrintWriter(new OutputStreamWriter(old)), this.commands);
+		PaintFileWriter.save(current, this.commands, false, ForkJoinPool.commonPool());
+		if (!Arrays.equals(old.toByteArray(), current.toByteArray()))
+			throw new IllegalStateException("the old and new text saves differ");
+	}
+
+	@Benchmark
+	public long saveText() {
+		CountingWriter out = new CountingWriter();
+		PaintModel.save(new PrintWriter(out), this.commands);
+		return out.count;
+	}
+
+	@Benchmark
+	public long saveTextOld() {
+		CountingWriter out = new CountingWriter();
+		oldSave(new PrintWriter(out), this.commands);
+		return out.count;
+	}
+
+	@Benchmark
+	public long saveTextParallel() throws IOException {
+		CountingStream out = new CountingStream();
+		PaintFileWriter.save(out, this.commands, false, ForkJoinPool.commonPool());
+		return out.count;
+	}
+
+	@Benchmark
+	public long saveTextCompressed() throws IOException {
+		CountingStream out = new CountingStream();
+		PaintFileWriter.save(out, this.commands, true, null);
+		return out.count;
+	}
+
+	@Benchmark
+	public long saveBinary() throws IOException {
+		CountingStream out = new CountingStream();
+		PaintBinaryFormat.save(out, this.commands);
+		return out.count;
+	}
+}
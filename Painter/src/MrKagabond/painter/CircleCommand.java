@@ -1,5 +1,5 @@
 package MrKagabond.painter;
-import javafx.scene.canvas.GraphicsContext;
+import java.io.IOException;
 
 public class CircleCommand extends PaintCommand {
 	private Point centre;
@@ -8,29 +8,69 @@ public class CircleCommand extends PaintCommand {
 	public CircleCommand(Point centre, int radius){
 		this.centre = centre;
 		this.radius = radius;
+		this.updateBounds();
 	}
 	public Point getCentre() { return centre; }
+	@Override
+	public int getPointCount() { return 1; }
 	public void setCentre(Point centre) { 
+		this.beginChange();
+		if (this.centre != null) {
+			this.oldX = this.centre.x;
+			this.oldY = this.centre.y;
+		}
 		this.centre = centre; 
-		this.setChanged();
-		this.notifyObservers();
+		this.updateBounds();
+		this.endChange(PaintModelEvent.Delta.CENTRE);
 	}
 	public int getRadius() { return radius; }
 	public void setRadius(int radius) { 
+		this.beginChange();
+		this.oldX = this.radius;
 		this.radius = radius; 
-		this.setChanged();
-		this.notifyObservers();
+		this.updateBounds();
+		this.endChange(PaintModelEvent.Delta.RADIUS);
+	}
+	private void updateBounds() {
+		if (this.centre == null) return;
+		this.bounds.set(centre.x - radius, centre.y - radius, centre.x + radius, centre.y + radius);
+	}
+	@Override
+	public boolean hits(int x, int y) {
+		if (this.centre == null) return false;
+		long dx = x - centre.x, dy = y - centre.y;
+		return dx * dx + dy * dy <= (long) radius * radius;
+	}
+	@Override
+	void writeTo(PaintFileWriter out) throws IOException {
+		out.write("Circle\n");
+		out.writeStyle(this);
+		out.write("\tcenter:");
+		out.writePoint(this.centre);
+		out.write("\tradius:");
+		out.writeInt(this.radius);
+		out.write("\nEnd Circle\n");
 	}
-	public void execute(GraphicsContext g){
+
+	@Override
+	void writeTo(PaintBinaryFormat.Writer out) throws IOException {
+		out.writeStyle(PaintBinaryFormat.CIRCLE, this, this.centre != null);
+		if (this.centre != null) {
+			out.writePoint(this.centre);
+		}
+		out.writeInt(this.radius);
+	}
+
+	@Override
+	public void draw(PaintRenderer r) {
 		int x = this.getCentre().x;
 		int y = this.getCentre().y;
 		int radius = this.getRadius();
-		if(this.isFill()){
-			g.setFill(this.getColor());
-			g.fillOval(x-radius, y-radius, 2*radius, 2*radius);
+		r.setColor(this.getColor());
+		if (this.isFill()) {
+			r.fillOval(x - radius, y - radius, 2 * radius, 2 * radius);
 		} else {
-			g.setStroke(this.getColor());
-			g.strokeOval(x-radius, y-radius, 2*radius, 2*radius);
+			r.strokeOval(x - radius, y - radius, 2 * radius, 2 * radius);
 		}
 	}
 }
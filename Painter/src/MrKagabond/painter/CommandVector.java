@@ -0,0 +1,208 @@
+package MrKagabond.painter;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of PaintCommands. plus() and pop() return a new vector
+ * that shares all but a path of small arrays with this one, so keeping an old
+ * version around is free: PaintModel hands out its current vector as a
+ * snapshot that later edits never disturb.
+ *
+ * The commands live in a tree of 32 wide arrays, with the last (up to 32)
+ * commands in a separate tail array, which makes get() and plus() effectively
+ * constant time.
+ */
+final class CommandVector extends AbstractList<PaintCommand> implements RandomAccess {
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	private static final Object[] EMPTY_NODE = new Object[WIDTH];
+	static final CommandVector EMPTY = new CommandVector(0, BITS, EMPTY_NODE, new Object[0]);
+
+	private final int size;
+	private final int shift; // BITS times the height of the tree
+	private final Object[] root;
+	private final Object[] tail;
+
+	private CommandVector(int size, int shift, Object[] root, Object[] tail) {
+		this.size = size;
+		this.shift = shift;
+		this.root = root;
+		this.tail = tail;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public PaintCommand get(int i) {
+		if (i < 0 || i >= this.size)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+		return (PaintCommand) this.leafFor(i)[i & MASK];
+	}
+
+	private int tailOffset() {
+		return this.size < WIDTH ? 0 : ((this.size - 1) >>> BITS) << BITS;
+	}
+
+	private Object[] leafFor(int i) {
+		if (i >= this.tailOffset())
+			return this.tail;
+		Object[] node = this.root;
+		for (int level = this.shift; level > 0; level -= BITS) {
+			node = (Object[]) node[(i >>> level) & MASK];
+		}
+		return node;
+	}
+
+	/**
+	 * @return this with c appended
+	 */
+	CommandVector plus(PaintCommand c) {
+		if (this.size - this.tailOffset() < WIDTH) {
+			Object[] tail = Arrays.copyOf(this.tail, this.tail.length + 1);
+			tail[this.tail.length] = c;
+			return new CommandVector(this.size + 1, this.shift, this.root, tail);
+		}
+		return this.pushLeaf(new Object[] { c });
+	}
+
+	/**
+	 * @return this with commands appended, in order. Whole leaves are built
+	 *         directly rather than one command at a time.
+	 */
+	CommandVector plusAll(Collection<? extends PaintCommand> commands) {
+		CommandVector v = this;
+		int remaining = commands.size();
+		Iterator<? extends PaintCommand> it = commands.iterator();
+		while (remaining > 0 && v.size - v.tailOffset() < WIDTH) {
+			v = v.plus(it.next());
+			remaining--;
+		}
+		while (remaining >= WIDTH) {
+			Object[] leaf = new Object[WIDTH];
+			for (int i = 0; i < WIDTH; i++) {
+				leaf[i] = it.next();
+			}
+			v = v.pushLeaf(leaf);
+			remaining -= WIDTH;
+		}
+		while (remaining > 0) {
+			v = v.plus(it.next());
+			remaining--;
+		}
+		return v;
+	}
+
+	/**
+	 * Move the full tail into the tree and start a new tail with leaf.
+	 */
+	private CommandVector pushLeaf(Object[] leaf) {
+		Object[] root;
+		int shift = this.shift;
+		if ((this.size >>> BITS) > (1 << this.shift)) {
+			// The tree is full, add a level
+			root = new Object[WIDTH];
+			root[0] = this.root;
+			root[1] = newPath(this.shift, this.tail);
+			shift += BITS;
+		} else {
+			root = this.pushTail(this.shift, this.root);
+		}
+		return new CommandVector(this.size + leaf.length, shift, root, leaf);
+	}
+
+	private Object[] pushTail(int level, Object[] parent) {
+		int i = ((this.size - 1) >>> level) & MASK;
+		Object[] node = parent.clone();
+		if (level == BITS) {
+			node[i] = this.tail;
+		} else {
+			Object[] child = (Object[]) parent[i];
+			node[i] = child != null ? this.pushTail(level - BITS, child) : newPath(level - BITS, this.tail);
+		}
+		return node;
+	}
+
+	private static Object[] newPath(int level, Object[] leaf) {
+		if (level == 0)
+			return leaf;
+		Object[] node = new Object[WIDTH];
+		node[0] = newPath(level - BITS, leaf);
+		return node;
+	}
+
+	/**
+	 * @return this without its last command
+	 */
+	CommandVector pop() {
+		if (this.size == 0)
+			throw new IllegalStateException("pop of an empty CommandVector");
+		if (this.size == 1)
+			return EMPTY;
+		if (this.size - this.tailOffset() > 1) {
+			return new CommandVector(this.size - 1, this.shift, this.root,
+					Arrays.copyOf(this.tail, this.tail.length - 1));
+		}
+		// The tail empties, the last leaf of the tree becomes the tail
+		Object[] tail = this.leafFor(this.size - 2);
+		Object[] root = this.popTail(this.shift, this.root);
+		int shift = this.shift;
+		if (root == null) {
+			root = EMPTY_NODE;
+		}
+		if (shift > BITS && root[1] == null) {
+			root = (Object[]) root[0];
+			shift -= BITS;
+		}
+		return new CommandVector(this.size - 1, shift, root, tail);
+	}
+
+	private Object[] popTail(int level, Object[] node) {
+		int i = ((this.size - 2) >>> level) & MASK;
+		if (level > BITS) {
+			Object[] child = this.popTail(level - BITS, (Object[]) node[i]);
+			if (child == null && i == 0)
+				return null;
+			Object[] copy = node.clone();
+			copy[i] = child;
+			return copy;
+		}
+		if (i == 0)
+			return null;
+		Object[] copy = node.clone();
+		copy[i] = null;
+		return copy;
+	}
+
+	@Override
+	public Iterator<PaintCommand> iterator() {
+		return new Iterator<PaintCommand>() {
+			private int i = 0;
+			private Object[] leaf;
+
+			@Override
+			public boolean hasNext() {
+				return this.i < CommandVector.this.size;
+			}
+
+			@Override
+			public PaintCommand next() {
+				if (this.i >= CommandVector.this.size)
+					throw new NoSuchElementException();
+				if ((this.i & MASK) == 0 || this.leaf == null) {
+					this.leaf = CommandVector.this.leafFor(this.i);
+				}
+				return (PaintCommand) this.leaf[this.i++ & MASK];
+			}
+		};
+	}
+}
@@ -0,0 +1,140 @@
+package MrKagabond.painter;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CommandVectorTest {
+
+	// Sizes where the tail fills, or the tree gains or loses a level
+	private static final int[] BOUNDARIES = { 32, 33, 64, 65, 1056, 1057, 1088, 32800, 32801, 32832, 1048608,
+			1048609 };
+
+	private static boolean nearBoundary(int size) {
+		for (int b : BOUNDARIES) {
+			if (Math.abs(size - b) <= 1)
+				return true;
+		}
+		return false;
+	}
+
+	private static void assertMatches(List<PaintCommand> expected, CommandVector v) {
+		assertEquals(expected.size(), v.size());
+		for (int i = 0; i < expected.size(); i++) {
+			if (expected.get(i) != v.get(i))
+				fail("get(" + i + ") of " + v.size());
+		}
+		Iterator<PaintCommand> it = v.iterator();
+		for (PaintCommand c : expected) {
+			if (it.next() != c)
+				fail("iterator of " + v.size());
+		}
+		assertFalse(it.hasNext());
+	}
+
+	private static List<PaintCommand> commands(int n) {
+		List<PaintCommand> commands = new ArrayList<PaintCommand>();
+		for (int i = 0; i < n; i++) {
+			commands.add(new CircleCommand(null, i));
+		}
+		return commands;
+	}
+
+	@Test
+	public void testPlusAndPopAcrossLevels() {
+		int n = BOUNDARIES[BOUNDARIES.length - 1] + 1;
+		List<PaintCommand> expected = commands(n);
+		CommandVector v = CommandVector.EMPTY;
+		for (int i = 0; i < n; i++) {
+			v = v.plus(expected.get(i));
+			assertSame(expected.get(i), v.get(i));
+			if (nearBoundary(v.size())) {
+				assertMatches(expected.subList(0, v.size()), v);
+			}
+		}
+		while (v.size() > 0) {
+			v = v.pop();
+			if (v.size() > 0) {
+				assertSame(expected.get(v.size() - 1), v.get(v.size() - 1));
+			}
+			if (nearBoundary(v.size())) {
+				assertMatches(expected.subList(0, v.size()), v);
+			}
+		}
+		assertEquals(0, v.size());
+	}
+
+	@Test
+	public void testPlusAllAcrossLevels() {
+		List<PaintCommand> expected = commands(40000);
+		for (int start : new int[] { 0, 1, 31, 32, 33, 1055, 1056, 32799 }) {
+			CommandVector v = CommandVector.EMPTY.plusAll(expected.subList(0, start));
+			v = v.plusAll(expected.subList(start, expected.size()));
+			assertMatches(expected, v);
+		}
+	}
+
+	@Test
+	public void testRandomEditsMatchArrayList() {
+		Random random = new Random(1);
+		ArrayList<PaintCommand> expected = new ArrayList<PaintCommand>();
+		CommandVector v = CommandVector.EMPTY;
+		for (int step = 0; step < 100000; step++) {
+			int op = random.nextInt(10);
+			if (op < 6) {
+				PaintCommand c = new CircleCommand(null, step);
+				v = v.plus(c);
+				expected.add(c);
+			} else if (op < 9) {
+				if (!expected.isEmpty()) {
+					v = v.pop();
+					expected.remove(expected.size() - 1);
+				}
+			} else {
+				List<PaintCommand> more = commands(random.nextInt(100));
+				v = v.plusAll(more);
+				expected.addAll(more);
+			}
+			if (step % 1000 == 0 || nearBoundary(v.size())) {
+				assertMatches(expected, v);
+			}
+		}
+		assertMatches(expected, v);
+	}
+
+	@Test
+	public void testOldVersionsStayUnchanged() {
+		Random random = new Random(2);
+		ArrayList<PaintCommand> expected = new ArrayList<PaintCommand>();
+		List<CommandVector> versions = new ArrayList<CommandVector>();
+		List<List<PaintCommand>> contents = new ArrayList<List<PaintCommand>>();
+		CommandVector v = CommandVector.EMPTY;
+		// Grow past two level changes, then shrink to nothing
+		while (v.size() < 33000) {
+			List<PaintCommand> more = commands(random.nextInt(3) == 0 ? random.nextInt(200) : 1);
+			v = v.plusAll(more);
+			expected.addAll(more);
+			if (random.nextInt(50) == 0 || nearBoundary(v.size())) {
+				versions.add(v);
+				contents.add(new ArrayList<PaintCommand>(expected));
+			}
+		}
+		while (v.size() > 0) {
+			v = v.pop();
+			expected.remove(expected.size() - 1);
+			if (random.nextInt(500) == 0 || nearBoundary(v.size())) {
+				versions.add(v);
+				contents.add(new ArrayList<PaintCommand>(expected));
+			}
+		}
+		for (int i = 0; i < versions.size(); i++) {
+			assertMatches(contents.get(i), versions.get(i));
+		}
+		assertEquals(Arrays.asList(), v);
+	}
+}
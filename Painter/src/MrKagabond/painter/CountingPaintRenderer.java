@@ -0,0 +1,87 @@
+package MrKagabond.painter;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Draws nothing, counting the calls made to it: for tests, and for draw
+ * call benchmarks that should not depend on a graphics pipeline.
+ */
+public class CountingPaintRenderer implements PaintRenderer {
+	private long colorChanges, fills, strokes, polylines, points;
+
+	@Override
+	public void setColor(Color color) {
+		this.colorChanges++;
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+		this.fills++;
+	}
+
+	@Override
+	public void strokeRect(int x, int y, int width, int height) {
+		this.strokes++;
+	}
+
+	@Override
+	public void fillOval(int x, int y, int width, int height) {
+		this.fills++;
+	}
+
+	@Override
+	public void strokeOval(int x, int y, int width, int height) {
+		this.strokes++;
+	}
+
+	@Override
+	public void strokePolyline(PointBuffer points) {
+		if (points.size() >= 2) {
+			this.polylines++;
+			this.points += points.size();
+		}
+	}
+
+	public void reset() {
+		this.colorChanges = this.fills = this.strokes = this.polylines = this.points = 0;
+	}
+
+	public long getColorChanges() {
+		return colorChanges;
+	}
+
+	/**
+	 * @return the rectangles and ovals filled
+	 */
+	public long getFills() {
+		return fills;
+	}
+
+	/**
+	 * @return the rectangles and ovals stroked
+	 */
+	public long getStrokes() {
+		return strokes;
+	}
+
+	/**
+	 * @return the polylines of two or more points stroked
+	 */
+	public long getPolylines() {
+		return polylines;
+	}
+
+	/**
+	 * @return the points in those polylines
+	 */
+	public long getPoints() {
+		return points;
+	}
+
+	/**
+	 * @return every fill and stroke
+	 */
+	public long getDrawCalls() {
+		return this.fills + this.strokes + this.polylines;
+	}
+}
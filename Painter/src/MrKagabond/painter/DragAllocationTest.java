@@ -0,0 +1,86 @@
+package MrKagabond.painter;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+
+public class DragAllocationTest {
+
+	private static final int WARMUP = 50000;
+	private static final int MEASURED = 10000;
+
+	private com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	private long allocatedBytes() {
+		return this.threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static MouseEvent event(javafx.event.EventType<MouseEvent> type, int x, int y) {
+		return new MouseEvent(type, x, y, x, y, MouseButton.PRIMARY, 1, false, false, false, false, true, false,
+				false, false, false, false, null);
+	}
+
+	/**
+	 * Press once, then drag back and forth over a fixed set of events.
+	 * 
+	 * @return the bytes allocated per drag event once warmed up
+	 */
+	private double bytesPerDrag(ShapeManipulatorStrategy strategy) {
+		MouseEvent[] drags = new MouseEvent[16];
+		for (int i = 0; i < drags.length; i++) {
+			drags[i] = event(MouseEvent.MOUSE_DRAGGED, 100 + 5 * i, 120 + 3 * i);
+		}
+		strategy.handle(event(MouseEvent.MOUSE_PRESSED, 100, 100));
+		for (int i = 0; i < WARMUP; i++) {
+			strategy.handle(drags[i % drags.length]);
+		}
+		long overhead = this.allocatedBytes();
+		overhead = this.allocatedBytes() - overhead;
+
+		long start = this.allocatedBytes();
+		for (int i = 0; i < MEASURED; i++) {
+			strategy.handle(drags[i % drags.length]);
+		}
+		long allocated = this.allocatedBytes() - start - overhead;
+		return (double) allocated / MEASURED;
+	}
+
+	private PaintModel observedModel() {
+		PaintModel model = new PaintModel();
+		model.addListener(event -> { });
+		return model;
+	}
+
+	@Test
+	public void circleDragDoesNotAllocate() {
+		assertEquals("bytes per circle drag", 0.0, bytesPerDrag(new CircleManipulatorStrategy(observedModel())), 0.0);
+	}
+
+	@Test
+	public void rectangleDragDoesNotAllocate() {
+		assertEquals("bytes per rectangle drag", 0.0,
+				bytesPerDrag(new RectangleManipulatorStrategy(observedModel())), 0.0);
+	}
+
+	@Test
+	public void squiggleDragDoesNotAllocate() {
+		// Turn the filter off so every event is appended, the buffer's amortized
+		// growth is taken out by reserving room up front
+		final PaintModel model = observedModel();
+		SquiggleManipulatorStrategy strategy = new SquiggleManipulatorStrategy(model) {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				super.mousePressed(e);
+				((SquiggleCommand) model.getLastCommand()).getPointBuffer().ensureCapacity(WARMUP + MEASURED + 1);
+			}
+		};
+		strategy.getStrokeFilter().setMinDistance(0);
+		strategy.getStrokeFilter().setSuppressDuplicates(false);
+		assertEquals("bytes per squiggle drag", 0.0, bytesPerDrag(strategy), 0.0);
+	}
+}
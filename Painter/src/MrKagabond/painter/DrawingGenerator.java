@@ -0,0 +1,191 @@
+package MrKagabond.painter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Generates synthetic drawings to load test with: shapes drawn at random in
+ * a given mix of circles, rectangles, squiggles and polygons, inside a
+ * width x height canvas. Squiggles wander the way a hand drawn stroke does
+ * and polygons go round a centre; both get between half and one and a half
+ * times the given number of points. The same seed gives the same drawing.
+ *
+ * Usage: DrawingGenerator [-n shapes] [-mix circles,rectangles,squiggles,polygons]
+ * [-p points] [-w width] [-h height] [-seed seed] [-v1 | -v2] output
+ *
+ * The mix is relative weights, 1,1,6,2 by default. The output is in the
+ * binary format (version 2) unless -v1 asks for text, which cannot hold
+ * polygons; text to a file named *.gz is compressed.
+ */
+public class DrawingGenerator {
+
+	private Random random;
+	private int width = 500, height = 500;
+	private int circles = 1, rectangles = 1, squiggles = 6, polygons = 2;
+	private int points = 100;
+
+	public DrawingGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	public static void main(String[] args) throws IOException {
+		DrawingGenerator generator = new DrawingGenerator(1);
+		int shapes = 1000, version = 2;
+		File output = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-n") && i + 1 < args.length) {
+					shapes = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-mix") && i + 1 < args.length) {
+					String[] mix = args[++i].split(",");
+					generator.setMix(Integer.parseInt(mix[0]), Integer.parseInt(mix[1]), Integer.parseInt(mix[2]),
+							Integer.parseInt(mix[3]));
+				} else if (args[i].equals("-p") && i + 1 < args.length) {
+					generator.setPoints(Integer.parseInt(args[++i]));
+				} else if (args[i].equals("-w") && i + 1 < args.length) {
+					generator.setSize(Integer.parseInt(args[++i]), generator.height);
+				} else if (args[i].equals("-h") && i + 1 < args.length) {
+					generator.setSize(generator.width, Integer.parseInt(args[++i]));
+				} else if (args[i].equals("-seed") && i + 1 < args.length) {
+					generator.setSeed(Long.parseLong(args[++i]));
+				} else if (args[i].equals("-v1") || args[i].equals("-v2")) {
+					version = args[i].equals("-v1") ? 1 : 2;
+				} else if (output == null && !args[i].startsWith("-")) {
+					output = new File(args[i]);
+				} else {
+					throw new IllegalArgumentException(args[i]);
+				}
+			}
+			if (output == null)
+				throw new IllegalArgumentException("no output");
+			if (version == 1 && generator.polygons > 0)
+				throw new IllegalArgumentException("the text format cannot hold polygons, use -v2 or no polygons");
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: DrawingGenerator [-n shapes] [-mix circles,rectangles,squiggles,polygons]"
+					+ " [-p points] [-w width] [-h height] [-seed seed] [-v1 | -v2] output");
+			System.exit(2);
+		}
+
+		List<PaintCommand> commands = generator.generate(shapes);
+		PaintFileConverter.save(commands, output, version);
+		System.out.printf("%s: %d commands, %d points, %d bytes, version %d%n", output, commands.size(),
+				PaintModel.countPoints(commands), output.length(), version);
+	}
+
+	/**
+	 * Start again from seed.
+	 */
+	public void setSeed(long seed) {
+		this.random.setSeed(seed);
+	}
+
+	public void setSize(int width, int height) {
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("size " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Set the relative weights of each kind of shape.
+	 */
+	public void setMix(int circles, int rectangles, int squiggles, int polygons) {
+		if (circles < 0 || rectangles < 0 || squiggles < 0 || polygons < 0
+				|| circles + rectangles + squiggles + polygons == 0)
+			throw new IllegalArgumentException("mix " + circles + "," + rectangles + "," + squiggles + "," + polygons);
+		this.circles = circles;
+		this.rectangles = rectangles;
+		this.squiggles = squiggles;
+		this.polygons = polygons;
+	}
+
+	/**
+	 * Set the mean number of points in a squiggle or polygon.
+	 */
+	public void setPoints(int points) {
+		if (points < 2)
+			throw new IllegalArgumentException("points " + points);
+		this.points = points;
+	}
+
+	public List<PaintCommand> generate(int shapes) {
+		ArrayList<PaintCommand> commands = new ArrayList<PaintCommand>(shapes);
+		for (int i = 0; i < shapes; i++) {
+			commands.add(this.next());
+		}
+		return commands;
+	}
+
+	public PaintCommand next() {
+		PaintCommand c;
+		int pick = this.random.nextInt(this.circles + this.rectangles + this.squiggles + this.polygons);
+		if ((pick -= this.circles) < 0) {
+			int radius = 1 + this.random.nextInt(Math.max(1, Math.min(this.width, this.height) / 8));
+			c = new CircleCommand(this.randomPoint(), radius);
+		} else if ((pick -= this.rectangles) < 0) {
+			c = new RectangleCommand(this.randomPoint(), this.randomPoint());
+		} else if ((pick -= this.squiggles) < 0) {
+			c = this.squiggle();
+		} else {
+			c = this.polygon();
+		}
+		c.setColor(Color.rgb(this.random.nextInt(256), this.random.nextInt(256), this.random.nextInt(256)));
+		c.setFill(this.random.nextInt(4) == 0);
+		return c;
+	}
+
+	private Point randomPoint() {
+		return new Point(this.random.nextInt(this.width), this.random.nextInt(this.height));
+	}
+
+	private int pointCount() {
+		return Math.max(2, this.points / 2 + this.random.nextInt(this.points + 1));
+	}
+
+	private SquiggleCommand squiggle() {
+		SquiggleCommand squiggle = new SquiggleCommand();
+		int n = this.pointCount();
+		squiggle.getPointBuffer().ensureCapacity(n);
+		double x = this.random.nextInt(this.width), y = this.random.nextInt(this.height);
+		double heading = this.random.nextDouble() * 2 * Math.PI;
+		for (int i = 0; i < n; i++) {
+			// Turn a little each step and bounce off the edges
+			heading += this.random.nextGaussian() * 0.3;
+			double step = 1 + 3 * this.random.nextDouble();
+			x += step * Math.cos(heading);
+			y += step * Math.sin(heading);
+			if (x < 0 || x >= this.width) {
+				heading = Math.PI - heading;
+				x = Math.max(0, Math.min(this.width - 1, x));
+			}
+			if (y < 0 || y >= this.height) {
+				heading = -heading;
+				y = Math.max(0, Math.min(this.height - 1, y));
+			}
+			squiggle.add((int) x, (int) y);
+		}
+		return squiggle;
+	}
+
+	private PolygonCommand polygon() {
+		PolygonCommand polygon = new PolygonCommand();
+		int n = this.pointCount();
+		int[] xy = new int[2 * n];
+		Point centre = this.randomPoint();
+		double radius = 1 + this.random.nextInt(Math.max(1, Math.min(this.width, this.height) / 4));
+		for (int i = 0; i < n; i++) {
+			double angle = 2 * Math.PI * i / n;
+			double r = radius * (0.5 + 0.5 * this.random.nextDouble());
+			xy[2 * i] = Math.max(0, Math.min(this.width - 1, (int) (centre.x + r * Math.cos(angle))));
+			xy[2 * i + 1] = Math.max(0, Math.min(this.height - 1, (int) (centre.y + r * Math.sin(angle))));
+		}
+		polygon.setPoints(xy);
+		return polygon;
+	}
+}
@@ -0,0 +1,50 @@
+package MrKagabond.painter;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * Renders on a JavaFX GraphicsContext.
+ */
+public class FxPaintRenderer implements PaintRenderer {
+	private GraphicsContext g;
+
+	public FxPaintRenderer(GraphicsContext g) {
+		this.g = g;
+	}
+
+	public GraphicsContext getGraphicsContext() {
+		return g;
+	}
+
+	@Override
+	public void setColor(Color color) {
+		this.g.setFill(color);
+		this.g.setStroke(color);
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+		this.g.fillRect(x, y, width, height);
+	}
+
+	@Override
+	public void strokeRect(int x, int y, int width, int height) {
+		this.g.strokeRect(x, y, width, height);
+	}
+
+	@Override
+	public void fillOval(int x, int y, int width, int height) {
+		this.g.fillOval(x, y, width, height);
+	}
+
+	@Override
+	public void strokeOval(int x, int y, int width, int height) {
+		this.g.strokeOval(x, y, width, height);
+	}
+
+	@Override
+	public void strokePolyline(PointBuffer points) {
+		points.strokePolyline(this.g);
+	}
+}
@@ -0,0 +1,99 @@
+package MrKagabond.painter;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Renders with Java2D, on a BufferedImage or any Graphics2D, producing the
+ * same geometry as FxPaintRenderer. Needs no display and no FX toolkit, so
+ * it works on servers and in tests.
+ */
+public class Java2DPaintRenderer implements PaintRenderer {
+
+	// The java.awt.Color of recently used Colors, by identity: commands keep
+	// their Color, so redrawing one finds it here rather than allocating
+	private static final int CACHE_SIZE = 4096;
+	private static final AwtColor[] cache = new AwtColor[CACHE_SIZE];
+
+	private static class AwtColor {
+		final Color color;
+		final java.awt.Color awt;
+
+		AwtColor(Color color) {
+			this.color = color;
+			this.awt = new java.awt.Color((float) color.getRed(), (float) color.getGreen(), (float) color.getBlue(),
+					(float) color.getOpacity());
+		}
+	}
+
+	private Graphics2D g;
+
+	public Java2DPaintRenderer(Graphics2D g) {
+		this.g = g;
+	}
+
+	/**
+	 * Render on image, antialiased as a JavaFX canvas is. dispose() the
+	 * Graphics2D when done.
+	 */
+	public Java2DPaintRenderer(BufferedImage image) {
+		this(image.createGraphics());
+		setRenderingHints(this.g);
+	}
+
+	/**
+	 * Set up g to match the antialiased, unadjusted strokes of a JavaFX
+	 * canvas.
+	 */
+	public static void setRenderingHints(Graphics2D g) {
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+	}
+
+	public Graphics2D getGraphics() {
+		return g;
+	}
+
+	public void dispose() {
+		this.g.dispose();
+	}
+
+	@Override
+	public void setColor(Color color) {
+		int slot = System.identityHashCode(color) & (CACHE_SIZE - 1);
+		AwtColor cached = cache[slot];
+		if (cached == null || cached.color != color) {
+			cached = new AwtColor(color);
+			cache[slot] = cached;
+		}
+		this.g.setColor(cached.awt);
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+		this.g.fillRect(x, y, width, height);
+	}
+
+	@Override
+	public void strokeRect(int x, int y, int width, int height) {
+		this.g.drawRect(x, y, width, height);
+	}
+
+	@Override
+	public void fillOval(int x, int y, int width, int height) {
+		this.g.fillOval(x, y, width, height);
+	}
+
+	@Override
+	public void strokeOval(int x, int y, int width, int height) {
+		this.g.drawOval(x, y, width, height);
+	}
+
+	@Override
+	public void strokePolyline(PointBuffer points) {
+		points.strokePolyline(this.g);
+	}
+}
@@ -0,0 +1,196 @@
+package MrKagabond.painter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import javafx.event.EventType;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+
+/**
+ * The mouse input that reached a PaintPanel, see PaintPanel.startRecording,
+ * with the time of each event and the shapes chosen in between, so it can
+ * be replayed with TraceReplay.
+ *
+ * Traces are saved as text. After a header line each line is one entry,
+ * starting with its time in nanoseconds from the first:
+ *
+ * time MOUSE_PRESSED x y button primaryDown secondaryDown clickCount
+ * time shape Circle
+ */
+public class MouseTrace {
+	private static final String HEADER = "PaintMouseTrace1";
+
+	// The events ShapeManipulatorStrategy.handle passes on
+	private static final EventType<?>[] TYPES = { MouseEvent.MOUSE_PRESSED, MouseEvent.MOUSE_DRAGGED,
+			MouseEvent.MOUSE_RELEASED, MouseEvent.MOUSE_MOVED, MouseEvent.MOUSE_CLICKED, MouseEvent.MOUSE_ENTERED,
+			MouseEvent.MOUSE_EXITED };
+
+	private static class Entry {
+		long time;
+		String shape; // or null for an event
+		MouseEvent event;
+	}
+
+	private ArrayList<Entry> entries = new ArrayList<Entry>();
+	private long start = -1;
+	private int eventCount = 0;
+
+	/**
+	 * Add event, if it is one the strategies handle.
+	 */
+	public void record(MouseEvent event) {
+		for (EventType<?> type : TYPES) {
+			if (event.getEventType() == type) {
+				this.add(System.nanoTime(), null, event);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Add a change to the shape strategy draws.
+	 */
+	public void recordShape(ShapeManipulatorStrategy strategy) {
+		this.add(System.nanoTime(), shapeName(strategy), null);
+	}
+
+	private void add(long now, String shape, MouseEvent event) {
+		if (this.start < 0) {
+			this.start = now;
+		}
+		Entry entry = new Entry();
+		entry.time = now - this.start;
+		entry.shape = shape;
+		entry.event = event;
+		this.entries.add(entry);
+		if (event != null) {
+			this.eventCount++;
+		}
+	}
+
+	/**
+	 * @return the shape name ShapeManipulatorFactory creates strategy for,
+	 *         or "None"
+	 */
+	static String shapeName(ShapeManipulatorStrategy strategy) {
+		String name = strategy.getClass().getSimpleName();
+		if (name.endsWith("ManipulatorStrategy") && !name.equals("ShapeManipulatorStrategy"))
+			return name.substring(0, name.length() - "ManipulatorStrategy".length());
+		return "None";
+	}
+
+	/**
+	 * @return the number of entries, events and shape changes
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	public int getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * @return when entry i happened, in nanoseconds from the first
+	 */
+	public long getTime(int i) {
+		return this.entries.get(i).time;
+	}
+
+	/**
+	 * @return the event at i, or null if entry i is a shape change
+	 */
+	public MouseEvent getEvent(int i) {
+		return this.entries.get(i).event;
+	}
+
+	/**
+	 * @return the shape chosen at i, or null if entry i is an event
+	 */
+	public String getShape(int i) {
+		return this.entries.get(i).shape;
+	}
+
+	/**
+	 * @return a strategy drawing on model for the shape chosen at i
+	 */
+	public ShapeManipulatorStrategy createStrategy(int i, PaintModel model) {
+		// The factory compares names by identity
+		ShapeManipulatorStrategy strategy = ShapeManipulatorFactory.create(this.getShape(i).intern(), model);
+		return strategy != null ? strategy : new ShapeManipulatorStrategy(model);
+	}
+
+	public void save(File file) throws IOException {
+		try (Writer out = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII))) {
+			out.write(HEADER + "\n");
+			for (Entry entry : this.entries) {
+				out.write(Long.toString(entry.time));
+				MouseEvent e = entry.event;
+				if (e == null) {
+					out.write(" shape " + entry.shape + "\n");
+				} else {
+					out.write(" " + e.getEventType().getName() + " " + e.getX() + " " + e.getY() + " " + e.getButton()
+							+ " " + e.isPrimaryButtonDown() + " " + e.isSecondaryButtonDown() + " "
+							+ e.getClickCount() + "\n");
+				}
+			}
+		}
+	}
+
+	public static MouseTrace load(File file) throws IOException {
+		MouseTrace trace = new MouseTrace();
+		trace.start = 0; // the times saved are relative already
+		try (BufferedReader in = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII))) {
+			if (!HEADER.equals(in.readLine()))
+				throw new IOException(file + ": not a mouse trace");
+			String line;
+			int lineNumber = 1;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty())
+					continue;
+				try {
+					String[] fields = line.split(" ");
+					long time = Long.parseLong(fields[0]);
+					if (fields[1].equals("shape")) {
+						trace.add(time, fields[2], null);
+					} else {
+						trace.add(time, null, event(fields));
+					}
+				} catch (RuntimeException e) {
+					throw new IOException(file + ": line " + lineNumber + ": " + e.getMessage(), e);
+				}
+			}
+		}
+		return trace;
+	}
+
+	private static MouseEvent event(String[] fields) {
+		EventType<MouseEvent> type = null;
+		for (EventType<?> t : TYPES) {
+			if (t.getName().equals(fields[1])) {
+				@SuppressWarnings("unchecked")
+				EventType<MouseEvent> mouseType = (EventType<MouseEvent>) t;
+				type = mouseType;
+			}
+		}
+		if (type == null)
+			throw new IllegalArgumentException("unknown event " + fields[1]);
+		double x = Double.parseDouble(fields[2]), y = Double.parseDouble(fields[3]);
+		return new MouseEvent(type, x, y, x, y, MouseButton.valueOf(fields[4]), Integer.parseInt(fields[7]), false,
+				false, false, false, Boolean.parseBoolean(fields[5]), false, Boolean.parseBoolean(fields[6]), false,
+				false, false, null);
+	}
+}
@@ -1,12 +1,18 @@
 package MrKagabond.painter;
 
+import java.io.File;
+import java.io.IOException;
+
 import javafx.application.Application;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
 import javafx.stage.Stage;
 
 public class Paint extends Application {
 
 	PaintModel model; // Model
 	View view; // View + Controller
+	PaintJournal journal; // Autosave
 
 	public static void main(String[] args) {
 		launch(args);
@@ -16,8 +22,40 @@ public class Paint extends Application {
 	public void start(Stage stage) throws Exception {
 		
 		this.model = new PaintModel();
+
+		// Offer back the drawing of a session that did not exit cleanly. The
+		// lock keeps the journal of another running session out of it.
+		this.journal = new PaintJournal(new File(System.getProperty("user.home"), ".paint"));
+		this.journal.lock();
+		if (this.journal.canRecover()) {
+			PaintModel recovered = new PaintModel();
+			try {
+				this.journal.recover(recovered);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (recovered.getCommandCount() > 0) {
+				Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "Recover the unsaved drawing, "
+						+ recovered.getCommandCount() + " shapes, from the last session?", ButtonType.YES,
+						ButtonType.NO);
+				alert.setHeaderText("Paint did not exit cleanly");
+				if (alert.showAndWait().orElse(ButtonType.NO) == ButtonType.YES) {
+					this.model = recovered;
+				} else {
+					// Kept, rather than compacted away by the new session
+					this.journal.setAside();
+				}
+			}
+		}
 		
 		// View + Controller
 		this.view = new View(model, stage);
+		this.view.setJournal(this.journal);
+	}
+
+	@Override
+	public void stop() {
+		// A clean exit, there is nothing to recover
+		this.journal.discard();
 	}
 }
@@ -0,0 +1,150 @@
+package MrKagabond.painter;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders Paint save files to PNG without opening a window.
+ *
+ * Usage: PaintBatchRenderer [-o outputDir] [-t threads] [-w width] [-h height]
+ * file-or-directory...
+ *
+ * Directories are searched recursively. Each PNG is written next to its save
+ * file, or into outputDir when given.
+ */
+public class PaintBatchRenderer {
+
+	private File outputDir = null;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int width = 500, height = 500;
+
+	private AtomicInteger rendered = new AtomicInteger();
+	private AtomicInteger failed = new AtomicInteger();
+
+	public static void main(String[] args) throws InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+		PaintBatchRenderer renderer = new PaintBatchRenderer();
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-o") && i + 1 < args.length) {
+				renderer.outputDir = new File(args[++i]);
+			} else if (args[i].equals("-t") && i + 1 < args.length) {
+				renderer.threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-w") && i + 1 < args.length) {
+				renderer.width = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-h") && i + 1 < args.length) {
+				renderer.height = Integer.parseInt(args[++i]);
+			} else {
+				collect(new File(args[i]), files);
+			}
+		}
+		if (files.isEmpty()) {
+			System.err.println(
+					"Usage: PaintBatchRenderer [-o outputDir] [-t threads] [-w width] [-h height] file-or-directory...");
+			System.exit(2);
+		}
+		renderer.renderAll(files);
+		System.exit(renderer.failed.get() == 0 ? 0 : 1);
+	}
+
+	private static void collect(File file, List<File> files) {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children == null)
+				return;
+			for (File child : children) {
+				collect(child, files);
+			}
+		} else if (!file.getName().toLowerCase().endsWith(".png")) {
+			files.add(file);
+		}
+	}
+
+	/**
+	 * Render files on a pool of this.threads threads. Submitting blocks once a
+	 * few files per thread are queued, so huge archives are not all queued at
+	 * once.
+	 */
+	public void renderAll(List<File> files) throws InterruptedException {
+		if (this.outputDir != null) {
+			this.outputDir.mkdirs();
+		}
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(2 * this.threads), new ThreadPoolExecutor.CallerRunsPolicy());
+		long start = System.nanoTime();
+		for (final File file : files) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					renderFile(file);
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("%d rendered, %d failed in %.2f s: %.1f files/s on %d threads%n", this.rendered.get(),
+				this.failed.get(), seconds, files.size() / seconds, this.threads);
+	}
+
+	private void renderFile(File file) {
+		try {
+			long start = System.nanoTime();
+			PaintModel model = new PaintModel();
+			PaintFileOpener opener = new PaintFileOpener();
+			boolean parsed = opener.open(file, model);
+			long parseTime = System.nanoTime() - start;
+			if (!parsed) {
+				this.failed.incrementAndGet();
+				System.out.println(file + ": " + opener.getErrorMessage());
+				return;
+			}
+
+			start = System.nanoTime();
+			BufferedImage image = this.render(model);
+			File output = this.outputFile(file);
+			ImageIO.write(image, "png", output);
+			long renderTime = System.nanoTime() - start;
+
+			this.rendered.incrementAndGet();
+			System.out.printf("%s: %d commands, parse %.1f ms, render %.1f ms -> %s%n", file,
+					model.getCommandCount(), parseTime / 1e6, renderTime / 1e6, output);
+		} catch (IOException | RuntimeException e) {
+			this.failed.incrementAndGet();
+			System.out.println(file + ": " + e);
+		}
+	}
+
+	BufferedImage render(PaintModel model) {
+		BufferedImage image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, this.width, this.height);
+		Java2DPaintRenderer.setRenderingHints(g);
+		model.executeAll(new Java2DPaintRenderer(g));
+		g.dispose();
+		return image;
+	}
+
+	private File outputFile(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0) {
+			name = name.substring(0, dot);
+		}
+		File dir = this.outputDir != null ? this.outputDir : file.getAbsoluteFile().getParentFile();
+		return new File(dir, name + ".png");
+	}
+}
@@ -0,0 +1,366 @@
+package MrKagabond.painter;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Reads and writes the binary Paint save file, version 2. A file is
+ *
+ * <pre>
+ * magic        0x89 'P' 'S' 'F', then the version byte 2
+ * count        the number of commands
+ * per command  a type tag byte, red, green and blue bytes, a flags byte
+ *              (bit 0: filled, bit 1: not yet placed), then
+ *   CIRCLE     centre x, centre y, radius; only the radius if not placed
+ *   RECTANGLE  p1 x, p1 y, p2 x, p2 y; nothing if not placed
+ *   SQUIGGLE,
+ *   POLYGON    the number of points, the first point, then each further
+ *              point as the difference from the one before
+ * </pre>
+ *
+ * Every number is a zigzag encoded varint: small values, positive or
+ * negative, take one byte. Squiggle points, usually a pixel or two apart,
+ * mostly take two bytes per point where the text format takes about 20.
+ *
+ * Each command writes itself (PaintCommand.writeTo(Writer)), as it does in
+ * the text format.
+ */
+public class PaintBinaryFormat {
+
+	static final byte[] MAGIC = { (byte) 0x89, 'P', 'S', 'F' };
+	static final int VERSION = 2;
+
+	static final int CIRCLE = 1, RECTANGLE = 2, SQUIGGLE = 3, POLYGON = 4;
+	private static final int FILLED = 1, UNPLACED = 2;
+
+	private String errorMessage = "";
+
+	private InputStream in;
+	private byte[] buffer = new byte[1 << 16];
+	private int bufferPos, bufferEnd;
+	private long offset; // of buffer[0] in the file
+	private PointBuffer points = new PointBuffer();
+
+	/**
+	 * @return whether in starts with the version 2 magic, without consuming
+	 *         anything
+	 */
+	public static boolean isBinary(BufferedInputStream in) throws IOException {
+		in.mark(MAGIC.length);
+		try {
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (in.read() != (MAGIC[i] & 0xff))
+					return false;
+			}
+			return true;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Write the commands, in order, as a version 2 file.
+	 */
+	public static void save(OutputStream out, List<PaintCommand> commands) throws IOException {
+		save(new Writer(out), commands);
+	}
+
+	static void save(Writer w, List<PaintCommand> commands) throws IOException {
+		for (byte b : MAGIC) {
+			w.write(b);
+		}
+		w.write(VERSION);
+		w.writeVarint(commands.size());
+		for (PaintCommand c : commands) {
+			w.writeCommand(c);
+		}
+		w.flush();
+	}
+
+	public static void save(OutputStream out, PaintModel model) throws IOException {
+		save(out, model.snapshot());
+	}
+
+	/**
+	 *
+	 * @return the error message resulting from an unsuccessful parse
+	 */
+	public String getErrorMessage() {
+		return this.errorMessage;
+	}
+
+	/**
+	 * Parse in, positioned at the magic, as a version 2 file. As with
+	 * PaintFileParser, the commands read before an error are still added to
+	 * paintModel, and on failure this.errorMessage says where.
+	 *
+	 * @return whether the complete file was successfully parsed
+	 */
+	public boolean parse(InputStream in, PaintModel paintModel) throws IOException {
+		this.start(in);
+		this.errorMessage = "";
+		ArrayList<PaintCommand> commands = new ArrayList<PaintCommand>();
+		try {
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (this.read() != (MAGIC[i] & 0xff)) {
+					this.error("Not a binary Paint save file");
+					return false;
+				}
+			}
+			int version = this.read();
+			if (version != VERSION) {
+				this.error("Unsupported version " + version);
+				return false;
+			}
+			long count = this.readVarint();
+			if (count < 0) {
+				this.error("Invalid command count");
+				return false;
+			}
+			commands.ensureCapacity((int) Math.min(count, 1 << 16));
+			for (long i = 0; i < count; i++) {
+				commands.add(this.readCommand());
+			}
+			return true;
+		} catch (FormatError e) {
+			this.error(e.getMessage());
+			return false;
+		} finally {
+			paintModel.addCommands(commands);
+		}
+	}
+
+	private void error(String mesg) {
+		this.errorMessage = "Error at byte " + (this.offset + this.bufferPos) + " " + mesg;
+	}
+
+	// A broken file rather than a failed read, caught by parse
+	@SuppressWarnings("serial")
+	private static class FormatError extends IOException {
+		FormatError(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Read from in, from the next byte on.
+	 */
+	void start(InputStream in) {
+		this.in = in;
+		this.bufferPos = this.bufferEnd = 0;
+		this.offset = 0;
+	}
+
+	/**
+	 * @return the command Writer.writeCommand wrote
+	 */
+	PaintCommand readCommand() throws IOException {
+		int tag = this.read();
+		if (tag < CIRCLE || tag > POLYGON)
+			throw new FormatError("Unknown command type " + tag);
+		Color color = this.readColor();
+		int flags = this.read();
+		boolean placed = (flags & UNPLACED) == 0;
+		PaintCommand c;
+		switch (tag) {
+		case CIRCLE:
+			Point centre = placed ? new Point(this.readInt(), this.readInt()) : null;
+			c = new CircleCommand(centre, this.readInt());
+			break;
+		case RECTANGLE:
+			if (placed) {
+				c = new RectangleCommand(new Point(this.readInt(), this.readInt()),
+						new Point(this.readInt(), this.readInt()));
+			} else {
+				c = new RectangleCommand(null, null);
+			}
+			break;
+		case SQUIGGLE:
+			SquiggleCommand squiggle = new SquiggleCommand();
+			squiggle.setPoints(this.readPoints());
+			c = squiggle;
+			break;
+		default: // POLYGON
+			PolygonCommand polygon = new PolygonCommand();
+			polygon.setPoints(this.readPoints());
+			c = polygon;
+			break;
+		}
+		c.setColor(color);
+		c.setFill((flags & FILLED) != 0);
+		return c;
+	}
+
+	Color readColor() throws IOException {
+		return Color.rgb(this.read(), this.read(), this.read());
+	}
+
+	boolean readFill() throws IOException {
+		return (this.read() & FILLED) != 0;
+	}
+
+	int read() throws IOException {
+		if (this.bufferPos == this.bufferEnd && !this.fill())
+			throw new FormatError("Unexpected end of file");
+		return this.buffer[this.bufferPos++] & 0xff;
+	}
+
+	/**
+	 * @return whether everything in the stream has been read
+	 */
+	boolean atEnd() throws IOException {
+		return this.bufferPos == this.bufferEnd && !this.fill();
+	}
+
+	private boolean fill() throws IOException {
+		int n = this.in.read(this.buffer, 0, this.buffer.length);
+		if (n <= 0)
+			return false;
+		this.offset += this.bufferEnd;
+		this.bufferPos = 0;
+		this.bufferEnd = n;
+		return true;
+	}
+
+	long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = this.read();
+			value |= (long) (b & 0x7f) << shift;
+			if (b < 0x80)
+				return value;
+		}
+		throw new FormatError("Malformed number");
+	}
+
+	int readInt() throws IOException {
+		int zigzag = (int) this.readVarint();
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	int[] readPoints() throws IOException {
+		long n = this.readVarint();
+		PointBuffer points = this.points;
+		points.clear();
+		int x = 0, y = 0;
+		for (long i = 0; i < n; i++) {
+			x += this.readInt();
+			y += this.readInt();
+			points.add(x, y);
+		}
+		return points.toArray();
+	}
+
+	/**
+	 * Buffered output of bytes, varints and commands.
+	 */
+	static class Writer {
+		private OutputStream out;
+		private byte[] buffer;
+		private int pos = 0;
+
+		Writer(OutputStream out) {
+			this(out, 1 << 16);
+		}
+
+		Writer(OutputStream out, int bufferSize) {
+			this.out = out;
+			this.buffer = new byte[Math.max(bufferSize, 16)];
+		}
+
+		void write(int b) throws IOException {
+			if (this.pos == this.buffer.length) {
+				this.flushBuffer();
+			}
+			this.buffer[this.pos++] = (byte) b;
+		}
+
+		void writeVarint(long value) throws IOException {
+			if (this.pos > this.buffer.length - 10) {
+				this.flushBuffer();
+			}
+			while ((value & ~0x7fL) != 0) {
+				this.buffer[this.pos++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			this.buffer[this.pos++] = (byte) value;
+		}
+
+		void writeInt(int value) throws IOException {
+			this.writeVarint(((value << 1) ^ (value >> 31)) & 0xffffffffL);
+		}
+
+		void writeCommand(PaintCommand c) throws IOException {
+			c.writeTo(this);
+		}
+
+		// For PaintCommand.writeTo
+
+		/**
+		 * Write the tag, color and flags every command starts with.
+		 */
+		void writeStyle(int tag, PaintCommand c) throws IOException {
+			this.writeStyle(tag, c, true);
+		}
+
+		/**
+		 * As writeStyle(int, PaintCommand), for a shape whose points may not
+		 * have been set yet; if not, the points are left out.
+		 */
+		void writeStyle(int tag, PaintCommand c, boolean placed) throws IOException {
+			this.write(tag);
+			this.writeColor(c.getColor());
+			this.write((c.isFill() ? FILLED : 0) | (placed ? 0 : UNPLACED));
+		}
+
+		void writePoint(Point p) throws IOException {
+			this.writeInt(p.x);
+			this.writeInt(p.y);
+		}
+
+		void writeColor(Color color) throws IOException {
+			this.write((int) Math.round(color.getRed() * 255));
+			this.write((int) Math.round(color.getGreen() * 255));
+			this.write((int) Math.round(color.getBlue() * 255));
+		}
+
+		void writeFill(boolean fill) throws IOException {
+			this.write(fill ? FILLED : 0);
+		}
+
+		void writePoints(PointBuffer points) throws IOException {
+			this.writePoints(points.array(), points.size());
+		}
+
+		/**
+		 * Write the first n interleaved points of xy.
+		 */
+		void writePoints(int[] xy, int n) throws IOException {
+			this.writeVarint(n);
+			int x = 0, y = 0;
+			for (int i = 0; i < 2 * n; i += 2) {
+				int px = xy[i], py = xy[i + 1];
+				this.writeInt(px - x);
+				this.writeInt(py - y);
+				x = px;
+				y = py;
+			}
+		}
+
+		private void flushBuffer() throws IOException {
+			this.out.write(this.buffer, 0, this.pos);
+			this.pos = 0;
+		}
+
+		void flush() throws IOException {
+			this.flushBuffer();
+			this.out.flush();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package MrKagabond.painter;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import javafx.scene.paint.Color;
+
+public class PaintBinaryFormatTest {
+
+	private static String describe(List<PaintCommand> commands) {
+		StringBuilder sb = new StringBuilder();
+		for (PaintCommand c : commands) {
+			sb.append(c.getClass().getSimpleName()).append(' ').append(c.getColor()).append(' ').append(c.isFill());
+			if (c instanceof CircleCommand) {
+				sb.append(' ').append(((CircleCommand) c).getCentre()).append(' ').append(((CircleCommand) c).getRadius());
+			} else if (c instanceof RectangleCommand) {
+				sb.append(' ').append(((RectangleCommand) c).getP1()).append(' ').append(((RectangleCommand) c).getP2());
+			} else if (c instanceof SquiggleCommand) {
+				sb.append(Arrays.toString(((SquiggleCommand) c).getPointBuffer().toArray()));
+			} else if (c instanceof PolygonCommand) {
+				sb.append(Arrays.toString(((PolygonCommand) c).getPointBuffer().toArray()));
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static <C extends PaintCommand> C style(C c, int rgb, boolean fill) {
+		c.setColor(Color.rgb(rgb >> 16 & 0xff, rgb >> 8 & 0xff, rgb & 0xff));
+		c.setFill(fill);
+		return c;
+	}
+
+	private static byte[] save(List<PaintCommand> commands) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PaintBinaryFormat.save(out, commands);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		List<PaintCommand> commands = new ArrayList<PaintCommand>();
+		commands.add(style(new CircleCommand(null, 7), 0xff0000, true));
+		commands.add(style(new CircleCommand(new Point(-5, 1 << 30), Integer.MAX_VALUE), 0x00ff00, false));
+		commands.add(style(new RectangleCommand(null, null), 0x0000ff, true));
+		commands.add(style(new RectangleCommand(new Point(Integer.MIN_VALUE, -1), new Point(Integer.MAX_VALUE, 0)),
+				0x123456, false));
+		commands.add(style(new SquiggleCommand(), 0xffffff, true));
+		commands.add(style(new PolygonCommand(), 0x000000, false));
+		SquiggleCommand squiggle = style(new SquiggleCommand(), 0x808080, false);
+		int[] xy = { 0, 0, 1, -1, -64, 63, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+				Integer.MIN_VALUE, 100000, -100000 };
+		for (int i = 0; i < xy.length; i += 2) {
+			squiggle.add(xy[i], xy[i + 1]);
+		}
+		commands.add(squiggle);
+		PolygonCommand polygon = style(new PolygonCommand(), 0x7f7f7f, true);
+		polygon.add(10, 20);
+		polygon.add(-30, 40);
+		polygon.add(10, 20);
+		commands.add(polygon);
+
+		PaintBinaryFormat format = new PaintBinaryFormat();
+		PaintModel model = new PaintModel();
+		assertTrue(format.parse(new ByteArrayInputStream(save(commands)), model));
+		assertEquals("", format.getErrorMessage());
+		assertEquals(describe(commands), describe(model.snapshot()));
+	}
+
+	@Test
+	public void testTruncatedFileKeepsCommandsBeforeTheEnd() throws IOException {
+		List<PaintCommand> commands = new ArrayList<PaintCommand>();
+		for (int i = 0; i < 3; i++) {
+			SquiggleCommand squiggle = new SquiggleCommand();
+			for (int j = 0; j < 10; j++) {
+				squiggle.add(i * 100 + j, j);
+			}
+			commands.add(squiggle);
+		}
+		byte[] bytes = save(commands);
+		int length = bytes.length - 5; // part way through the third squiggle
+
+		PaintBinaryFormat format = new PaintBinaryFormat();
+		PaintModel model = new PaintModel();
+		assertFalse(format.parse(new ByteArrayInputStream(bytes, 0, length), model));
+		assertEquals(describe(commands.subList(0, 2)), describe(model.snapshot()));
+		assertEquals("Error at byte " + length + " Unexpected end of file", format.getErrorMessage());
+	}
+}
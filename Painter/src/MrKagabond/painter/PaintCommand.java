@@ -1,13 +1,31 @@
 package MrKagabond.painter;
 
-import java.util.Observable;
+import java.awt.Graphics2D;
+import java.io.IOException;
 
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
-public abstract class PaintCommand extends Observable {
+public abstract class PaintCommand {
 	private Color color;
 	private boolean fill;
+	protected Rect bounds = new Rect();
+
+	// The state before the change in progress, see beginChange(). Mutators
+	// fill in oldX and oldY, or oldPoints, with the value they replace;
+	// oldPoints is only kept until the model has been told.
+	Rect oldBounds = new Rect();
+	Color oldColor;
+	boolean oldFill;
+	int oldX, oldY;
+	int[] oldPoints;
+
+	// Maintained by PaintModel and its SpatialIndex
+	PaintModel model; // the model this was added to, told about every change
+	int z = -1; // position in the model's drawing order
+	Rect indexedBounds = new Rect();
+	int[] cellSlots; // where this is in each cell under indexedBounds, row by row
+	int queryStamp;
 
 	PaintCommand() {
 		// Pick a random color for this
@@ -24,7 +42,9 @@ public abstract class PaintCommand extends Observable {
 	}
 
 	public void setColor(Color color) {
+		this.beginChange();
 		this.color = color;
+		this.endChange(PaintModelEvent.Delta.STYLE);
 	}
 
 	public boolean isFill() {
@@ -32,7 +52,9 @@ public abstract class PaintCommand extends Observable {
 	}
 
 	public void setFill(boolean fill) {
+		this.beginChange();
 		this.fill = fill;
+		this.endChange(PaintModelEvent.Delta.STYLE);
 	}
 
 	public String toString() {
@@ -47,9 +69,9 @@ public abstract class PaintCommand extends Observable {
 	}
 
 	public String displayGeneralDetails() {
-		int r = (int) (this.color.getRed() * 256);
-		int g = (int) (this.color.getGreen() * 256);
-		int b = (int) (this.color.getBlue() * 256);
+		int r = (int) Math.round(this.color.getRed() * 255);
+		int g = (int) Math.round(this.color.getGreen() * 255);
+		int b = (int) Math.round(this.color.getBlue() * 255);
 
 		String s = "";
 		s += "\tcolor:" + r + "," + g + "," + b + "\n";
@@ -57,5 +79,77 @@ public abstract class PaintCommand extends Observable {
 		return s;
 	}
 
-	public abstract void execute(GraphicsContext g);
+	/**
+	 * Write this in the text save format, see PaintFileWriter.
+	 */
+	abstract void writeTo(PaintFileWriter out) throws IOException;
+
+	/**
+	 * Write this in the binary save format, see PaintBinaryFormat.
+	 */
+	abstract void writeTo(PaintBinaryFormat.Writer out) throws IOException;
+
+	/**
+	 * @return the box covering everything this command draws, kept up to
+	 *         date as the command changes
+	 */
+	public Rect getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * @return whether (x,y) is on this command, by default anywhere inside
+	 *         its bounds
+	 */
+	public boolean hits(int x, int y) {
+		return this.bounds.contains(x, y);
+	}
+
+	/**
+	 * Call before changing this, to remember the state before the change.
+	 */
+	protected void beginChange() {
+		this.oldBounds.set(this.bounds);
+		this.oldColor = this.color;
+		this.oldFill = this.fill;
+		this.oldX = this.oldY = 0;
+		this.oldPoints = null;
+	}
+
+	/**
+	 * Tell the model holding this, if any, that this changed since
+	 * beginChange().
+	 */
+	protected void endChange(PaintModelEvent.Delta delta) {
+		if (this.model != null) {
+			this.model.commandMutated(this, delta);
+		}
+		this.oldPoints = null;
+	}
+
+	/**
+	 * Draw this with r.
+	 */
+	public abstract void draw(PaintRenderer r);
+
+	/**
+	 * @return the points this is stored as, a centre or corners included
+	 */
+	public abstract int getPointCount();
+
+	/**
+	 * Draw this on a JavaFX canvas. To draw many commands, draw them with one
+	 * FxPaintRenderer.
+	 */
+	public void execute(GraphicsContext g) {
+		this.draw(new FxPaintRenderer(g));
+	}
+
+	/**
+	 * Draw this with Java2D, producing the same geometry as
+	 * execute(GraphicsContext), see Java2DPaintRenderer.
+	 */
+	public void execute(Graphics2D g) {
+		this.draw(new Java2DPaintRenderer(g));
+	}
 }
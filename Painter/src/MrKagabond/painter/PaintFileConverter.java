@@ -0,0 +1,114 @@
+package MrKagabond.painter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Converts Paint save files between the text format (version 1) and the
+ * binary format (version 2).
+ *
+ * Usage: PaintFileConverter [-v1 | -v2] input output
+ *
+ * Without -v1 or -v2 the output is in the other format from the input. Text
+ * output to a file named *.gz is GZIP compressed. The
+ * output is read back and compared with the input, since the text format
+ * cannot hold everything: its parser rejects polygons and negative
+ * coordinates.
+ */
+public class PaintFileConverter {
+
+	public static void main(String[] args) throws IOException {
+		int version = 0;
+		int i = 0;
+		if (args.length > 0 && (args[0].equals("-v1") || args[0].equals("-v2"))) {
+			version = args[0].equals("-v1") ? 1 : 2;
+			i++;
+		}
+		if (args.length - i != 2) {
+			System.err.println("Usage: PaintFileConverter [-v1 | -v2] input output");
+			System.exit(2);
+		}
+		System.exit(convert(new File(args[i]), new File(args[i + 1]), version) ? 0 : 1);
+	}
+
+	/**
+	 * Convert input to output, in the given format version, or 0 for the other
+	 * format from input.
+	 *
+	 * @return whether the input was read and the output holds all of it
+	 */
+	public static boolean convert(File input, File output, int version) throws IOException {
+		PaintModel model = new PaintModel();
+		PaintFileOpener opener = new PaintFileOpener();
+		if (!opener.open(input, model)) {
+			System.out.println(input + ": " + opener.getErrorMessage());
+			return false;
+		}
+		if (version == 0) {
+			version = opener.isBinary() ? 1 : 2;
+		}
+		save(model, output, version);
+
+		PaintModel check = new PaintModel();
+		boolean parsed = opener.open(output, check);
+		if (!parsed || check.getCommandCount() != model.getCommandCount()) {
+			System.out.println(output + ": only " + check.getCommandCount() + " of " + model.getCommandCount()
+					+ " commands read back " + opener.getErrorMessage());
+			return false;
+		}
+		System.out.printf("%s (%d bytes) -> %s (%d bytes, version %d), %d commands%n", input, input.length(), output,
+				output.length(), version, model.getCommandCount());
+		return true;
+	}
+
+	/**
+	 * Save model to file in format version 1 (text) or 2 (binary).
+	 */
+	public static void save(PaintModel model, File file, int version) throws IOException {
+		save(model.snapshot(), file, version);
+	}
+
+	/**
+	 * Save commands, such as a PaintModel snapshot, to file in format version
+	 * 1 (text) or 2 (binary). Text is compressed if the file name ends in
+	 * ".gz", and large drawings are written in parallel.
+	 */
+	public static void save(List<PaintCommand> commands, File file, int version) throws IOException {
+		save(commands, file, version, null);
+	}
+
+	/**
+	 * As save(List, File, int), timed with the save timer of metrics, a
+	 * window's, or if null with PaintMetrics.SAVE alone.
+	 */
+	public static void save(List<PaintCommand> commands, File file, int version, PaintMetrics metrics)
+			throws IOException {
+		save(commands, file, version, file.getName().endsWith(".gz"), metrics);
+	}
+
+	/**
+	 * As save(List, File, int, PaintMetrics), with text compressed if gzip
+	 * whatever the name of file, for a temporary file that is renamed after.
+	 */
+	public static void save(List<PaintCommand> commands, File file, int version, boolean gzip, PaintMetrics metrics)
+			throws IOException {
+		long start = System.nanoTime();
+		if (version == 1) {
+			try (OutputStream out = new FileOutputStream(file)) {
+				PaintFileWriter.save(out, commands, gzip, ForkJoinPool.commonPool());
+			}
+		} else {
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+				PaintBinaryFormat.save(out, commands);
+			}
+		}
+		PaintMetrics.Timer timer = metrics != null ? metrics.getSave() : PaintMetrics.SAVE;
+		timer.record(System.nanoTime() - start, commands.size(), PaintModel.countPoints(commands), 0,
+				file.length());
+	}
+}
@@ -0,0 +1,132 @@
+package MrKagabond.painter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens a Paint save file in either format, the text format of
+ * PaintFileParser or the binary PaintBinaryFormat, telling them apart by the
+ * binary magic. Either may be GZIP compressed.
+ */
+public class PaintFileOpener {
+
+	private String errorMessage = "";
+	private boolean binary = false;
+	private LongConsumer progress;
+	private PaintMetrics metrics;
+
+	/**
+	 * Have open(File, PaintModel) report the number of bytes read so far to
+	 * progress, from the thread opening the file. Null reports nothing.
+	 */
+	public void setProgress(LongConsumer progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Time opens with the load timer of metrics, a window's, rather than only
+	 * the process-wide PaintMetrics.LOAD. Null times them with LOAD alone.
+	 */
+	public void setMetrics(PaintMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Parse file into paintModel. Large text files are parsed in parallel,
+	 * see PaintFileParser.parse(File, PaintModel). Interrupting the thread
+	 * stops the open, with a failure or an InterruptedIOException.
+	 *
+	 * @return whether the complete file was successfully parsed
+	 */
+	public boolean open(File file, PaintModel paintModel) throws IOException {
+		long start = System.nanoTime();
+		int commands = paintModel.getCommandCount();
+		long notifications = paintModel.getNotificationCount();
+		try {
+			return this.openFile(file, paintModel);
+		} finally {
+			long points = 0;
+			for (int i = commands; i < paintModel.getCommandCount(); i++) {
+				points += paintModel.getCommand(i).getPointCount();
+			}
+			PaintMetrics.Timer timer = this.metrics != null ? this.metrics.getLoad() : PaintMetrics.LOAD;
+			timer.record(System.nanoTime() - start, paintModel.getCommandCount() - commands, points,
+					paintModel.getNotificationCount() - notifications, file.length());
+		}
+	}
+
+	private boolean openFile(File file, PaintModel paintModel) throws IOException {
+		// The bytes read to tell the format apart are only reported if they
+		// are not read again, so progress runs once from 0 to the file size
+		ProgressInputStream counted = new ProgressInputStream(new FileInputStream(file), null);
+		try (BufferedInputStream in = new BufferedInputStream(counted, 1 << 16)) {
+			this.binary = PaintBinaryFormat.isBinary(in);
+			if (this.binary || isGzip(in)) {
+				counted.setProgress(this.progress);
+				return this.open(in, paintModel);
+			}
+		}
+		PaintFileParser parser = new PaintFileParser();
+		parser.setProgress(this.progress);
+		boolean parsed = parser.parse(file, paintModel);
+		this.errorMessage = parser.getErrorMessage();
+		return parsed;
+	}
+
+	/**
+	 * Parse in into paintModel, see PaintFileParser.parse.
+	 *
+	 * @return whether the complete file was successfully parsed
+	 */
+	public boolean open(BufferedInputStream in, PaintModel paintModel) throws IOException {
+		if (isGzip(in)) {
+			in = new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16);
+		}
+		this.binary = PaintBinaryFormat.isBinary(in);
+		boolean parsed;
+		if (this.binary) {
+			PaintBinaryFormat format = new PaintBinaryFormat();
+			parsed = format.parse(in, paintModel);
+			this.errorMessage = format.getErrorMessage();
+		} else {
+			PaintFileParser parser = new PaintFileParser();
+			parsed = parser.parse(new BufferedReader(new InputStreamReader(in)), paintModel);
+			this.errorMessage = parser.getErrorMessage();
+		}
+		return parsed;
+	}
+
+	/**
+	 * @return whether in starts with the GZIP magic, without consuming
+	 *         anything
+	 */
+	static boolean isGzip(BufferedInputStream in) throws IOException {
+		in.mark(2);
+		try {
+			return in.read() == 0x1f && in.read() == 0x8b;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * @return whether the last file opened was binary
+	 */
+	public boolean isBinary() {
+		return binary;
+	}
+
+	/**
+	 *
+	 * @return the error message resulting from an unsuccessful open
+	 */
+	public String getErrorMessage() {
+		return this.errorMessage;
+	}
+}
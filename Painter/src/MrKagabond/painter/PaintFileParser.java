@@ -1,57 +1,79 @@
 package MrKagabond.painter;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.LongConsumer;
 
 import javafx.scene.paint.Color;
 
+/**
+ * Parses the Paint Save File Format. Lines are read into a reusable char
+ * buffer and scanned in place: no regular expressions, no Strings per line,
+ * and numbers are read straight from the buffer.
+ *
+ * The format was first checked with regular expressions, and files are
+ * accepted and rejected exactly as they were then, quirks included: an empty
+ * line or a "Polygon" line starts a shape that keeps the kind of the previous
+ * one, and a number too big for an int fails the parse with no message.
+ *
+ * Large files can be parsed in parallel, see parse(File, PaintModel).
+ */
 public class PaintFileParser {
 
+    // Files this big are parsed in parallel chunks of at least MIN_CHUNK
+    static final int LARGE_FILE = 4 << 20;
+    static final int MIN_CHUNK = 1 << 20;
+
+    // Results of step() and run() that are not a state
+    private static final int DONE = -1, FAILED = -2;
+
     private int lineNumber = 0;
     private String errorMessage = "";
+    private int errorLine; // the lineNumber and message given to error()
+    private String errorText;
     private PaintModel paintModel;
 
     private boolean isCircle, isRectangle, isSquiggle, isPolygon = false;
 
-    private Pattern pFileStart = Pattern.compile("^(Paint Save File Version 1.0)|(PaintSaveFileVersion1.0)$");
-    private Pattern pFileEnd = Pattern.compile("^(End Paint Save File)|(EndPaintSaveFile)$");
-
-    private Pattern pAnyShape = Pattern.compile("^(Circle)||(Rectangle)||(Squiggle)||(Polygon)$");
-
-    private Pattern pGeneralColor = Pattern.compile(
-            "^\tcolor:(([0-9]{0,2})|([0-2]{0,1}[0-5]{0,2})|([0-1]{0,1}[0-9]{0,2})|([0-2]{0,1}[0-5]{0,1}[0-9]{0,1}))(,)(([0-9]{0,2})|([0-2]{0,1}[0-5]{0,2})|([0-1]{0,1}[0-9]{0,2})|([0-2]{0,1}[0-5]{0,1}[0-9]{0,1}))(,)(([0-9]{0,2})|([0-2]{0,1}[0-5]{0,2})|([0-1]{0,1}[0-9]{0,2})|([0-2]{0,1}[0-5]{0,1}[0-9]{0,1}))$");
-    private Pattern pGeneralIsFilled = Pattern.compile("^\t(filled:)(true|false)$");
-
-    private Pattern pCircleStart = Pattern.compile("^Circle$");
-    private Pattern pCircleCenter = Pattern.compile("^\t(center:\\()[0-9]+(,)[0-9]+(\\))$");
-    private Pattern pCircleRadius = Pattern.compile("^\t(radius:)[0-9]+$");
-    private Pattern pCircleEnd = Pattern.compile("^End Circle$");
-
-    private Pattern pRectangleStart = Pattern.compile("^Rectangle$");
-    private Pattern pRectangleP1 = Pattern.compile("^\t(p1:)\\([0-9]+(,)[0-9]+(\\))$");
-    private Pattern pRectangleP2 = Pattern.compile("^\t(p2:)\\([0-9]+(,)[0-9]+(\\))$");
-    private Pattern pRectangleEnd = Pattern.compile("^End Rectangle$");
-
-    private Pattern pSquiggleStart = Pattern.compile("^Squiggle$");
-    private Pattern pSquigglePointsStart = Pattern.compile("^\tpoints$");
-    private Pattern pSquigglePoint = Pattern.compile("^\t\t(point:\\()[0-9]+(,)[0-9]+(\\))$");
-    private Pattern pSquigglePointsEnd = Pattern.compile("^\tend points$");
-    private Pattern pSquiggleEnd = Pattern.compile("^End Squiggle$");
-
-    private Pattern pPolygonStart = Pattern.compile("^Polyline$");
-    private Pattern pPolygonPointsStart = Pattern.compile("^\tpoints$");
-    private Pattern pPolygonPoint = Pattern.compile("^\t\t(point:\\()[0-9]+(,)[0-9]+(\\))$");
-    private Pattern pPolygonPointsEnd = Pattern.compile("^\tend points$");
-    private Pattern pPolygonEnd = Pattern.compile("^End Polyline$");
+    // The line being parsed is line[0, lineLength)
+    private char[] line = new char[128];
+    private int lineLength;
+    private int pos; // where scanning the line has got to
+    private int number; // the last number scanned
+    private int x, y; // the last pair scanned
+    private int[] rgb = new int[3]; // the last color scanned
+    private boolean overflow; // a number scanned did not fit in an int
+
+    // Lines come from reader through buffer, or straight from bytes
+    private BufferedReader reader;
+    private char[] buffer;
+    private int bufferPos, bufferEnd;
+    private long charsRead; // from reader, for PaintMetrics
+    private ByteBuffer bytes;
+    private int bytesPos, bytesEnd;
+    private boolean skipLF; // the last line ended with '\r'
+
+    private int state; // where run() stopped
 
     private Color shapeColor = null;
     private boolean shapeIsFilled = false;
     private int shapeRadius = -1;
     private Point shapeCenter, shapeP1, shapeP2 = null;
-    private ArrayList<Point> shapePoints = new ArrayList<Point>();
+    private PointBuffer shapePoints = new PointBuffer();
+    // Commands parsed so far, handed to the model in one batch at the end
+    private ArrayList<PaintCommand> parsedCommands = new ArrayList<PaintCommand>();
+
+    private LongConsumer progress; // told the bytes parsed by parse(File, ...)
 
     /**
      * Store an appropriate error message in this, including lineNumber where
@@ -60,6 +82,8 @@ public class PaintFileParser {
      * @param mesg
      */
     private void error(String mesg) {
+        this.errorLine = lineNumber;
+        this.errorText = mesg;
         this.errorMessage = "Error in line " + lineNumber + " " + mesg;
     }
 
@@ -83,298 +107,537 @@ public class PaintFileParser {
      * @throws IOException
      */
     public boolean parse(BufferedReader inputStream, PaintModel paintModel) throws IOException {
+        long start = System.nanoTime();
+        int commands = paintModel.getCommandCount();
+        long notifications = paintModel.getNotificationCount();
+        this.charsRead = 0;
+        try {
+            return this.parseReader(inputStream, paintModel);
+        } finally {
+            record(start, paintModel, commands, notifications, this.charsRead);
+        }
+    }
+
+    /**
+     * Record a parse that started at start, when paintModel had commands
+     * commands, in PaintMetrics.
+     */
+    private static void record(long start, PaintModel paintModel, int commands, long notifications, long bytes) {
+        long points = 0;
+        for (int i = commands; i < paintModel.getCommandCount(); i++) {
+            points += paintModel.getCommand(i).getPointCount();
+        }
+        PaintMetrics.PARSE.record(System.nanoTime() - start, paintModel.getCommandCount() - commands, points,
+                paintModel.getNotificationCount() - notifications, bytes);
+    }
+
+    private boolean parseReader(BufferedReader inputStream, PaintModel paintModel) throws IOException {
+        this.reader = inputStream;
+        this.bytes = null;
+        if (this.buffer == null) {
+            this.buffer = new char[1 << 16];
+        }
+        this.bufferPos = this.bufferEnd = 0;
         try {
             this.paintModel = paintModel;
-            this.errorMessage = "";
-
-            // During the parse, we will be building one of the
-            // following commands. As we parse the file, we modify
-            // the appropriate command.
-            CircleCommand circleCommand = null;
-            RectangleCommand rectangleCommand = null;
-            SquiggleCommand squiggleCommand = null;
-            PolygonCommand polygonCommand = null;
-
-            int state = 0;
-            Matcher m;
-            String l;
-
-            this.lineNumber = 0;
-            while ((l = inputStream.readLine()) != null) { // loop
-                this.lineNumber++;
-                System.out.println(lineNumber + " " + l + " " + state);
-                switch (state) {
-                    case 0:
-                        m = pFileStart.matcher(l);
-
-                        if (m.matches()) {
-                            state = 1;
-                            break;
-                        }
-                        error("Expected Start of Paint Save File");
-                        return false;
-                    case 1: // Looking for the start of a new object or end of the
-                        // save file
-                        m = pFileEnd.matcher(l);
-                        if (m.matches()) {
-                            state = 99;
-                            break;
-                        }
-
-                        m = pAnyShape.matcher(l);
-                        if (m.matches()) {
-                            // Regardless of the shape, it should have a color and a
-                            // filled status, thus the state will be set to 2
-                            state = 2;
-
-                            // Store which shape is at the lth line in the form of a
-                            // boolean system
-                            m = pCircleStart.matcher(l);
-                            if (m.matches()) {
-                                stateReset();
-                                isCircle = true;
-                                break;
-                            }
-
-                            m = pRectangleStart.matcher(l);
-                            if (m.matches()) {
-                                stateReset();
-                                isRectangle = true;
-                                break;
-                            }
-
-                            m = pSquiggleStart.matcher(l);
-                            if (m.matches()) {
-                                stateReset();
-                                isSquiggle = true;
-                                break;
-                            }
-
-                            m = pPolygonStart.matcher(l);
-                            if (m.matches()) {
-                                stateReset();
-                                isPolygon = true;
-                                break;
-                            }
-
-                            break;
-                        }
-
-                    case 2:
-                        // Color
-                        m = pGeneralColor.matcher(l);
-                        if (m.matches()) {
-                            try {
-                                shapeColor = (getColor(l));
-                            } catch (Exception e1) {
-                                error("Incorrect Color Value(s)");
-                                return false;
-                            }
-                            state = 3;
-                            break;
-                        } else {
-                            error("Incorrect Color Value(s)");
-                            return false;
-                        }
-
-                    case 3:
-                        // Filled
-                        m = pGeneralIsFilled.matcher(l);
-                        if (m.matches()) {
-                            shapeIsFilled = getIsFilled(l);
-
-                            // Will change to the correct state based on the boolean
-                            // system
-                            if (isCircle) {
-                                state = 11;
-                                break;
-                            } else if (isRectangle) {
-                                state = 21;
-                                break;
-                            } else if (isSquiggle) {
-                                state = 31;
-                                break;
-                            } else if (isPolygon) {
-                                state = 41;
-                                break;
-                            }
-                        }
-                        error("Incorrect Boolean Value");
-                        return false;
-
-                    case 11: // CIRCLE
-                        m = pCircleCenter.matcher(l);
-                        if (m.matches()) {
-                            shapeCenter = getCenter(l);
-                            state = 12;
-                            break;
-                        } else {
-                            error("Invalid Circle Center");
-                            return false;
-                        }
-
-                    case 12:
-                        m = pCircleRadius.matcher(l);
-                        if (m.matches()) {
-                            shapeRadius = getRadius(l);
-                            state = 13;
-                            break;
-                        } else {
-                            error("Invalid Circle Radius");
-                            return false;
-                        }
-
-                    case 13:
-                        m = pCircleEnd.matcher(l);
-                        if (m.matches()) {
-                            circleCommand = new CircleCommand(shapeCenter, shapeRadius);
-                            circleCommand.setColor(shapeColor);
-                            circleCommand.setFill(shapeIsFilled);
-                            paintModel.addCommand(circleCommand);
-                            state = 1;
-                            break;
-                        } else {
-                            error("Invalid Circle Ending");
-                            return false;
-                        }
-
-                    case 21: // RECTANGLE
-                        m = pRectangleP1.matcher(l);
-                        if (m.matches()) {
-                            shapeP1 = getP1(l);
-                            state = 22;
-                            break;
-                        } else {
-                            error("Invalid Rectangle P1");
-                            return false;
-                        }
-
-                    case 22:
-                        m = pRectangleP2.matcher(l);
-                        if (m.matches()) {
-                            shapeP2 = getP2(l);
-                            state = 23;
-                            break;
-                        } else {
-                            error("Invalid Rectangle P2");
-                            return false;
-                        }
-
-                    case 23:
-                        m = pRectangleEnd.matcher(l);
-                        if (m.matches()) {
-                            rectangleCommand = new RectangleCommand(shapeP1, shapeP2);
-                            rectangleCommand.setColor(shapeColor);
-                            rectangleCommand.setFill(shapeIsFilled);
-                            paintModel.addCommand(rectangleCommand);
-                            state = 1;
-                            break;
-                        } else {
-                            error("Invalid Rectangle Ending");
-                            return false;
-                        }
-
-                    case 31: // Squiggle
-                        m = pSquigglePointsStart.matcher(l);
-                        if (m.matches()) {
-                            state = 32;
-                            break;
-                        } else {
-                            error("Invalid Squiggle Point List");
-                            return false;
-                        }
-
-                    case 32:
-                        m = pSquigglePoint.matcher(l);
-                        if (m.matches()) {
-                            shapePoints.add(getPoint(l));
-                            state = 32;
-                            break;
-                        }
-                        m = pSquigglePointsEnd.matcher(l);
-                        if (m.matches()) {
-                            state = 33;
-                            break;
-                        } else {
-                            error("Invalid Squiggle Point");
-                            return false;
-                        }
-
-                    case 33:
-                        m = pSquiggleEnd.matcher(l);
-                        if (m.matches()) {
-                            squiggleCommand = new SquiggleCommand();
-                            squiggleCommand.setColor(shapeColor);
-                            squiggleCommand.setFill(shapeIsFilled);
-                            for (Point temp : shapePoints) {
-                                squiggleCommand.add(temp);
-                            }
-                            paintModel.addCommand(squiggleCommand);
-                            state = 1;
-                            break;
-                        } else {
-                            error("Invalid Squiggle Ending");
-                            return false;
-                        }
-
-                    case 41: // Polygon
-                        m = pPolygonPointsStart.matcher(l);
-                        if (m.matches()) {
-                            state = 42;
-                            break;
-                        } else {
-                            error("Invalid Polygon Point List");
-                            return false;
-                        }
-
-                    case 42:
-                        m = pPolygonPoint.matcher(l);
-                        if (m.matches()) {
-                            shapePoints.add(getPoint(l));
-                            state = 42;
-                            break;
-                        }
-                        m = pPolygonPointsEnd.matcher(l);
-                        if (m.matches()) {
-                            state = 43;
-                            break;
-                        } else {
-                            error("Invalid Polygon Point");
-                            return false;
-                        }
-
-                    case 43:
-                        m = pPolygonEnd.matcher(l);
-                        if (m.matches()) {
-                            polygonCommand = new PolygonCommand();
-                            polygonCommand.setColor(shapeColor);
-                            polygonCommand.setFill(shapeIsFilled);
-                            for (Point temp : shapePoints) {
-                                squiggleCommand.add(temp);
-                            }
-                            paintModel.addCommand(polygonCommand);
-                            state = 1;
-                            break;
-                        } else {
-                            error("Invalid Polygon Ending");
-                            return false;
-                        }
-
-                    case 99:
-                        m = pFileEnd.matcher(l);
-                        if (m.matches()) {
-                            return true;
-                        } else {
-                            error("Invalid file end");
-                            return false;
-                        }
+            this.begin();
+            return this.run(0) != FAILED;
+        } catch (Exception e) {
+            return false;
+        } finally {
+            // Whatever was parsed before an error is kept, as before
+            paintModel.addCommands(this.parsedCommands);
+            this.parsedCommands.clear();
+        }
+    }
 
+    private void begin() {
+        this.errorMessage = "";
+        this.errorLine = 0;
+        this.parsedCommands.clear();
+        this.skipLF = false;
+        this.lineNumber = 0;
+    }
+
+    /**
+     * Parse lines until the input ends, starting in the given state.
+     *
+     * @return the state at the end of the input, or DONE or FAILED if the
+     *         parse finished before it
+     */
+    private int run(int state) throws IOException {
+        while (readLine()) { // loop
+            this.lineNumber++;
+            if ((this.lineNumber & 0xfff) == 0) {
+                if (Thread.currentThread().isInterrupted())
+                    return this.state = FAILED;
+                if (this.progress != null && this.bytes != null) {
+                    this.progress.accept(this.bytesPos);
                 }
             }
-            return true;
+            state = step(state);
+            if (state < 0)
+                break;
+        }
+        this.state = state;
+        return state;
+    }
+
+    /**
+     * Parse this.line in the given state.
+     *
+     * @return the next state, DONE if the file is complete, FAILED on an error
+     */
+    private int step(int state) {
+        // During the parse, we will be building one of the
+        // following commands. As we parse the file, we modify
+        // the appropriate command.
+        CircleCommand circleCommand = null;
+        RectangleCommand rectangleCommand = null;
+        SquiggleCommand squiggleCommand = null;
+        PolygonCommand polygonCommand = null;
+
+        this.overflow = false;
+        switch (state) {
+            case 0:
+                if (lineMatches("Paint Save File Version 1.0") || lineMatches("PaintSaveFileVersion1.0")) {
+                    state = 1;
+                    break;
+                }
+                error("Expected Start of Paint Save File");
+                return FAILED;
+            case 1: // Looking for the start of a new object or end of the
+                // save file
+                if (lineIs("End Paint Save File") || lineIs("EndPaintSaveFile")) {
+                    state = 99;
+                    break;
+                }
+
+                // Regardless of the shape, it should have a color and a
+                // filled status, thus the state will be set to 2
+                if (lineIs("Circle")) {
+                    stateReset();
+                    isCircle = true;
+                    state = 2;
+                    break;
+                }
+                if (lineIs("Rectangle")) {
+                    stateReset();
+                    isRectangle = true;
+                    state = 2;
+                    break;
+                }
+                if (lineIs("Squiggle")) {
+                    stateReset();
+                    isSquiggle = true;
+                    state = 2;
+                    break;
+                }
+                if (lineLength == 0 || lineIs("Polygon")) {
+                    // No reset, the shape is of the kind before it
+                    state = 2;
+                    break;
+                }
+                // Anything else is checked as a color line
+
+            case 2:
+                // Color
+                if (scanColor()) {
+                    state = 3;
+                    break;
+                } else {
+                    error("Incorrect Color Value(s)");
+                    return FAILED;
+                }
+
+            case 3:
+                // Filled
+                boolean filled = lineIs("\tfilled:true");
+                if (filled || lineIs("\tfilled:false")) {
+                    shapeIsFilled = filled;
+
+                    // Will change to the correct state based on the boolean
+                    // system
+                    if (isCircle) {
+                        state = 11;
+                        break;
+                    } else if (isRectangle) {
+                        state = 21;
+                        break;
+                    } else if (isSquiggle) {
+                        state = 31;
+                        break;
+                    } else if (isPolygon) {
+                        state = 41;
+                        break;
+                    }
+                }
+                error("Incorrect Boolean Value");
+                return FAILED;
+
+            case 11: // CIRCLE
+                if (scanPair("\tcenter:(", 0)) {
+                    if (overflow)
+                        return FAILED;
+                    shapeCenter = new Point(x, y);
+                    state = 12;
+                    break;
+                } else {
+                    error("Invalid Circle Center");
+                    return FAILED;
+                }
+
+            case 12:
+                if (startsWith("\tradius:") && scanNumber(0) && pos == lineLength) {
+                    if (overflow)
+                        return FAILED;
+                    shapeRadius = number;
+                    state = 13;
+                    break;
+                } else {
+                    error("Invalid Circle Radius");
+                    return FAILED;
+                }
+
+            case 13:
+                if (lineIs("End Circle")) {
+                    circleCommand = new CircleCommand(shapeCenter, shapeRadius);
+                    circleCommand.setColor(shapeColor);
+                    circleCommand.setFill(shapeIsFilled);
+                    parsedCommands.add(circleCommand);
+                    state = 1;
+                    break;
+                } else {
+                    error("Invalid Circle Ending");
+                    return FAILED;
+                }
+
+            case 21: // RECTANGLE
+                // The corners were read with the digit of "p1" or "p2"
+                // in front of x, so x overflows that much sooner
+                if (scanPair("\tp1:(", 1)) {
+                    if (overflow)
+                        return FAILED;
+                    shapeP1 = new Point(x, y);
+                    state = 22;
+                    break;
+                } else {
+                    error("Invalid Rectangle P1");
+                    return FAILED;
+                }
+
+            case 22:
+                if (scanPair("\tp2:(", 2)) {
+                    if (overflow)
+                        return FAILED;
+                    shapeP2 = new Point(x, y);
+                    state = 23;
+                    break;
+                } else {
+                    error("Invalid Rectangle P2");
+                    return FAILED;
+                }
+
+            case 23:
+                if (lineIs("End Rectangle")) {
+                    rectangleCommand = new RectangleCommand(shapeP1, shapeP2);
+                    rectangleCommand.setColor(shapeColor);
+                    rectangleCommand.setFill(shapeIsFilled);
+                    parsedCommands.add(rectangleCommand);
+                    state = 1;
+                    break;
+                } else {
+                    error("Invalid Rectangle Ending");
+                    return FAILED;
+                }
+
+            case 31: // Squiggle
+                if (lineIs("\tpoints")) {
+                    state = 32;
+                    break;
+                } else {
+                    error("Invalid Squiggle Point List");
+                    return FAILED;
+                }
+
+            case 32:
+                if (scanPair("\t\tpoint:(", 0)) {
+                    if (overflow)
+                        return FAILED;
+                    shapePoints.add(x, y);
+                    state = 32;
+                    break;
+                }
+                if (lineIs("\tend points")) {
+                    state = 33;
+                    break;
+                } else {
+                    error("Invalid Squiggle Point");
+                    return FAILED;
+                }
+
+            case 33:
+                if (lineIs("End Squiggle")) {
+                    squiggleCommand = new SquiggleCommand();
+                    squiggleCommand.setColor(shapeColor);
+                    squiggleCommand.setFill(shapeIsFilled);
+                    squiggleCommand.setPoints(shapePoints.toArray());
+                    parsedCommands.add(squiggleCommand);
+                    state = 1;
+                    break;
+                } else {
+                    error("Invalid Squiggle Ending");
+                    return FAILED;
+                }
+
+            case 41: // Polygon
+                if (lineIs("\tpoints")) {
+                    state = 42;
+                    break;
+                } else {
+                    error("Invalid Polygon Point List");
+                    return FAILED;
+                }
+
+            case 42:
+                if (scanPair("\t\tpoint:(", 0)) {
+                    if (overflow)
+                        return FAILED;
+                    shapePoints.add(x, y);
+                    state = 42;
+                    break;
+                }
+                if (lineIs("\tend points")) {
+                    state = 43;
+                    break;
+                } else {
+                    error("Invalid Polygon Point");
+                    return FAILED;
+                }
+
+            case 43:
+                if (lineIs("End Polyline")) {
+                    polygonCommand = new PolygonCommand();
+                    polygonCommand.setColor(shapeColor);
+                    polygonCommand.setFill(shapeIsFilled);
+                    polygonCommand.setPoints(shapePoints.toArray());
+                    parsedCommands.add(polygonCommand);
+                    state = 1;
+                    break;
+                } else {
+                    error("Invalid Polygon Ending");
+                    return FAILED;
+                }
+
+            case 99:
+                if (lineIs("End Paint Save File") || lineIs("EndPaintSaveFile")) {
+                    return DONE;
+                } else {
+                    error("Invalid file end");
+                    return FAILED;
+                }
+
+        }
+        return state;
+    }
+
+    /**
+     * Have parse(File, ...) report the number of bytes parsed so far to
+     * progress, from the parsing thread. Null reports nothing.
+     */
+    public void setProgress(LongConsumer progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Parse file, with the same result as parse(BufferedReader, PaintModel).
+     * A file of LARGE_FILE bytes or more is memory mapped and cut into chunks
+     * at the start of Circle, Rectangle and Squiggle lines, which reset the
+     * parse, and the chunks are parsed in parallel. Then they are checked in
+     * order: a chunk that did not end ready for a new shape, as when the
+     * split line was really inside a shape, continues through the rest of
+     * the file alone, as a single parse would have. Error line numbers count
+     * from the start of the file.
+     *
+     * Interrupting the thread stops the parse, which then fails with no
+     * error message.
+     *
+     * @return whether the complete file was successfully parsed
+     */
+    public boolean parse(File file, PaintModel paintModel) throws IOException {
+        return this.parse(file, paintModel, ForkJoinPool.commonPool());
+    }
+
+    public boolean parse(File file, PaintModel paintModel, ForkJoinPool pool) throws IOException {
+        long start = System.nanoTime();
+        int commands = paintModel.getCommandCount();
+        long notifications = paintModel.getNotificationCount();
+        try {
+            return this.parseFile(file, paintModel, pool);
+        } finally {
+            record(start, paintModel, commands, notifications, file.length());
+        }
+    }
+
+    private boolean parseFile(File file, PaintModel paintModel, ForkJoinPool pool) throws IOException {
+        ByteBuffer bytes = null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= LARGE_FILE && size <= Integer.MAX_VALUE) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+        // A file start line that is not ASCII may decode to a different
+        // length, leave it to the Reader
+        if (bytes == null || !isAscii(bytes, 0, nextLineStart(bytes, 0))) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new ProgressInputStream(new FileInputStream(file), this.progress)))) {
+                return this.parseReader(reader, paintModel);
+            }
+        }
+
+        int parallelism = pool.getParallelism();
+        int[] starts = split(bytes, parallelism > 1 ? Math.min(4 * parallelism, bytes.limit() / MIN_CHUNK) : 1);
+        ArrayList<ForkJoinTask<PaintFileParser>> chunks = new ArrayList<ForkJoinTask<PaintFileParser>>();
+        for (int i = 0; i < starts.length; i++) {
+            final ByteBuffer chunkBytes = bytes.duplicate();
+            final int start = starts[i], end = i + 1 < starts.length ? starts[i + 1] : bytes.limit();
+            final int state = i == 0 ? 0 : 1;
+            final LongConsumer progress = i == 0 ? this.progress : null;
+            ForkJoinTask<PaintFileParser> chunk = ForkJoinTask.adapt(
+                    () -> parseChunk(chunkBytes, start, end, state, progress));
+            chunks.add(i > 0 ? pool.submit(chunk) : chunk);
+        }
+        // The first chunk is parsed here, so that it can report progress
+        // and be interrupted
+        chunks.get(0).invoke();
+
+        this.errorMessage = "";
+        ArrayList<PaintCommand> commands = new ArrayList<PaintCommand>();
+        boolean parsed = true;
+        int lines = 0; // before the current chunk
+        for (int i = 0; i < chunks.size(); i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                for (int j = i; j < chunks.size(); j++) {
+                    chunks.get(j).cancel(false);
+                }
+                parsed = false;
+                break;
+            }
+            PaintFileParser chunk = chunks.get(i).join();
+            boolean rest = chunk.state >= 0 && chunk.state != 1 && i + 1 < chunks.size();
+            if (rest) {
+                // The next chunk does not start a shape after all
+                for (int j = i + 1; j < chunks.size(); j++) {
+                    chunks.get(j).cancel(false);
+                }
+                chunk.bytesEnd = bytes.limit();
+                chunk.progress = this.progress;
+                chunk.resume();
+            }
+            commands.addAll(chunk.parsedCommands);
+            if (chunk.state == FAILED) {
+                if (chunk.errorLine > 0) {
+                    this.errorMessage = "Error in line " + (lines + chunk.errorLine) + " " + chunk.errorText;
+                }
+                parsed = false;
+                break;
+            }
+            if (chunk.state == DONE || rest)
+                break;
+            lines += chunk.lineNumber;
+            if (this.progress != null) {
+                this.progress.accept(chunk.bytesEnd);
+            }
+        }
+        if (parsed && this.progress != null) {
+            this.progress.accept(bytes.limit());
+        }
+        paintModel.addCommands(commands);
+        return parsed;
+    }
+
+    private static PaintFileParser parseChunk(ByteBuffer bytes, int start, int end, int state,
+            LongConsumer progress) {
+        PaintFileParser chunk = new PaintFileParser();
+        chunk.progress = progress;
+        chunk.bytes = bytes;
+        chunk.bytesPos = start;
+        chunk.bytesEnd = end;
+        chunk.begin();
+        chunk.state = state;
+        chunk.resume();
+        return chunk;
+    }
+
+    /**
+     * Carry on parsing from this.state, up to this.bytesEnd.
+     */
+    private void resume() {
+        try {
+            this.run(this.state);
         } catch (Exception e) {
+            this.state = FAILED;
+        }
+    }
+
+    /**
+     * @return the offsets where chunks start: 0, then the starts of up to
+     *         count - 1 Circle, Rectangle or Squiggle lines spread over bytes
+     */
+    private static int[] split(ByteBuffer bytes, int count) {
+        int size = bytes.limit();
+        int[] starts = new int[Math.max(1, count)];
+        int n = 1;
+        for (int k = 1; k < count; k++) {
+            int p = Math.max((int) ((long) size * k / count), starts[n - 1] + 1);
+            p = nextLineStart(bytes, p - 1);
+            while (p < size && !(lineStartsShape(bytes, p, "Circle") || lineStartsShape(bytes, p, "Rectangle")
+                    || lineStartsShape(bytes, p, "Squiggle"))) {
+                p = nextLineStart(bytes, p);
+            }
+            if (p >= size)
+                break;
+            starts[n++] = p;
+        }
+        return Arrays.copyOf(starts, n);
+    }
+
+    /**
+     * @return the start of the first line after the one p is in
+     */
+    private static int nextLineStart(ByteBuffer bytes, int p) {
+        int size = bytes.limit();
+        while (p < size) {
+            byte b = bytes.get(p++);
+            if (b == '\n')
+                return p;
+            if (b == '\r')
+                return p < size && bytes.get(p) == '\n' ? p + 1 : p;
+        }
+        return size;
+    }
+
+    private static boolean lineStartsShape(ByteBuffer bytes, int p, String shape) {
+        int n = shape.length();
+        if (p + n > bytes.limit())
             return false;
+        for (int i = 0; i < n; i++) {
+            if (bytes.get(p + i) != shape.charAt(i))
+                return false;
         }
+        if (p + n == bytes.limit())
+            return true;
+        byte b = bytes.get(p + n);
+        return b == '\n' || b == '\r';
+    }
+
+    private static boolean isAscii(ByteBuffer bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes.get(i) < 0)
+                return false;
+        }
+        return true;
     }
 
     private void stateReset() {
@@ -389,55 +652,204 @@ public class PaintFileParser {
         shapePoints.clear();
     }
 
-    private Color getColor(String s) {
-        s = s.replaceAll("[^0123456789,]", " ");
-        s = s.replaceAll(" ", "");
-        s = s.replaceAll(",", " ");
-        String[] t = s.split(" ");
+    /**
+     * Read the next line into this.line, splitting lines the way
+     * BufferedReader.readLine does.
+     *
+     * @return false at the end of the input
+     */
+    private boolean readLine() throws IOException {
+        return this.bytes != null ? this.readByteLine() : this.readCharLine();
+    }
+
+    private boolean readCharLine() throws IOException {
+        this.lineLength = 0;
+        while (true) {
+            if (this.bufferPos == this.bufferEnd) {
+                int n = this.reader.read(this.buffer, 0, this.buffer.length);
+                if (n > 0) {
+                    this.charsRead += n;
+                }
+                if (n < 0) {
+                    return this.lineLength > 0;
+                }
+                this.bufferPos = 0;
+                this.bufferEnd = n;
+                continue;
+            }
+            if (this.skipLF) {
+                this.skipLF = false;
+                if (this.buffer[this.bufferPos] == '\n') {
+                    this.bufferPos++;
+                    continue;
+                }
+            }
+            int start = this.bufferPos, end = start;
+            char c = 0;
+            while (end < this.bufferEnd) {
+                c = this.buffer[end];
+                if (c == '\n' || c == '\r')
+                    break;
+                end++;
+            }
+            int length = end - start;
+            if (this.lineLength + length > this.line.length) {
+                this.line = Arrays.copyOf(this.line, Math.max(2 * this.line.length, this.lineLength + length));
+            }
+            System.arraycopy(this.buffer, start, this.line, this.lineLength, length);
+            this.lineLength += length;
+            if (end < this.bufferEnd) {
+                this.bufferPos = end + 1;
+                this.skipLF = c == '\r';
+                return true;
+            }
+            this.bufferPos = end;
+        }
+    }
 
-        Color tempColor = Color.rgb(Integer.parseInt(t[0]), Integer.parseInt(t[1]), Integer.parseInt(t[2]));
-        return tempColor;
+    /**
+     * readLine from bytes[bytesPos, bytesEnd), one char per byte.
+     */
+    private boolean readByteLine() {
+        ByteBuffer bytes = this.bytes;
+        int p = this.bytesPos, end = this.bytesEnd;
+        if (this.skipLF) {
+            this.skipLF = false;
+            if (p < end && bytes.get(p) == '\n')
+                p++;
+        }
+        if (p >= end) {
+            this.bytesPos = p;
+            return false;
+        }
+        char[] line = this.line;
+        int n = 0;
+        while (p < end) {
+            byte b = bytes.get(p);
+            if (b == '\n' || b == '\r')
+                break;
+            if (n == line.length) {
+                line = this.line = Arrays.copyOf(line, 2 * n);
+            }
+            line[n++] = (char) (b & 0xff);
+            p++;
+        }
+        this.lineLength = n;
+        if (p < end) {
+            this.skipLF = bytes.get(p) == '\r';
+            p++;
+        }
+        this.bytesPos = p;
+        return true;
     }
 
-    private boolean getIsFilled(String s) {
-        if (s.equals("true")) {
-            return true;
-        } else {
+    private boolean lineIs(String s) {
+        if (this.lineLength != s.length())
             return false;
+        for (int i = 0; i < this.lineLength; i++) {
+            if (this.line[i] != s.charAt(i))
+                return false;
         }
+        return true;
     }
 
-    private Point getCenter(String s) {
-        s = s.replaceAll("[^0123456789,]", " ");
-        s = s.replaceAll(" ", "");
-        s = s.replaceAll(",", " ");
-        String[] t = s.split(" ");
+    /**
+     * Like lineIs, but a '.' in s matches any character except a line
+     * terminator, as it did in the regular expression.
+     */
+    private boolean lineMatches(String s) {
+        if (this.lineLength != s.length())
+            return false;
+        for (int i = 0; i < this.lineLength; i++) {
+            char c = this.line[i];
+            if (s.charAt(i) == '.' ? c == '\u0085' || c == '\u2028' || c == '\u2029' : c != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
 
-        Point tempPoint = new Point(Integer.parseInt(t[0]), Integer.parseInt(t[1]));
-        System.out.println(tempPoint.toString());
-        return tempPoint;
+    /**
+     * @return whether the line starts with prefix, if so scanning continues
+     *         after it
+     */
+    private boolean startsWith(String prefix) {
+        int n = prefix.length();
+        if (this.lineLength < n)
+            return false;
+        for (int i = 0; i < n; i++) {
+            if (this.line[i] != prefix.charAt(i))
+                return false;
+        }
+        this.pos = n;
+        return true;
     }
 
-    private int getRadius(String s) {
-        s = s.replaceAll("[^0-9.]", " ");
-        s = s.replace(" ", "");
-        return Integer.parseInt(s);
+    private boolean skip(char c) {
+        if (this.pos < this.lineLength && this.line[this.pos] == c) {
+            this.pos++;
+            return true;
+        }
+        return false;
     }
 
-    private Point getP1(String s) {
-        Point tempPoint = getCenter(s);
-        String tempX = Integer.toString(tempPoint.getX());
-        int oldY = tempPoint.getY();
-        int newX = Integer.parseInt(tempX.substring(1));
-        tempPoint = new Point(newX, oldY);
-        return tempPoint;
+    /**
+     * Scan one or more digits into this.number. this.overflow is set if the
+     * number, with the digit lead written in front of it unless lead is 0,
+     * does not fit in an int.
+     *
+     * @return false if there are no digits
+     */
+    private boolean scanNumber(int lead) {
+        int start = this.pos;
+        long withLead = lead, value = 0;
+        while (this.pos < this.lineLength) {
+            int d = this.line[this.pos] - '0';
+            if (d < 0 || d > 9)
+                break;
+            if (withLead <= Integer.MAX_VALUE) {
+                withLead = withLead * 10 + d;
+                value = value * 10 + d;
+            }
+            this.pos++;
+        }
+        if (withLead > Integer.MAX_VALUE)
+            this.overflow = true;
+        this.number = (int) value;
+        return this.pos > start;
     }
 
-    private Point getP2(String s) {
-        return getP1(s);
+    /**
+     * Scan a whole line of the form prefix x,y) into this.x and this.y.
+     */
+    private boolean scanPair(String prefix, int lead) {
+        if (!startsWith(prefix) || !scanNumber(lead))
+            return false;
+        this.x = this.number;
+        if (!skip(',') || !scanNumber(0))
+            return false;
+        this.y = this.number;
+        return skip(')') && this.pos == this.lineLength;
     }
 
-    private Point getPoint(String s) {
-        return getCenter(s);
+    /**
+     * Scan a color line, three components of 1 to 3 digits each up to 255,
+     * into this.shapeColor.
+     */
+    private boolean scanColor() {
+        if (!startsWith("\tcolor:"))
+            return false;
+        int[] rgb = this.rgb;
+        for (int i = 0; i < 3; i++) {
+            if (i > 0 && !skip(','))
+                return false;
+            int start = this.pos;
+            if (!scanNumber(0) || this.pos - start > 3 || this.number > 255)
+                return false;
+            rgb[i] = this.number;
+        }
+        if (this.pos != this.lineLength)
+            return false;
+        this.shapeColor = Color.rgb(rgb[0], rgb[1], rgb[2]);
+        return true;
     }
 }
@@ -4,8 +4,15 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -130,5 +137,90 @@ public class PaintFileParserTest {
 		this.doParserTestCase("samplefiles/multishapes_fail_missingendshape.txt",
 				"Returns false for multiple shapes file with incorrect end shape", "Error in line 13 ");
 	}
+
+	/**
+	 * @return a save file of over PaintFileParser.LARGE_FILE bytes, with a
+	 *         squiggle long enough to cross any chunk boundary near the middle
+	 */
+	private static String largeFile() throws IOException {
+		List<PaintCommand> commands = new DrawingGenerator(17).generate(6000);
+		// A Polygon line keeps the kind of the shape before, see PaintFileParser
+		commands.removeIf(c -> c instanceof PolygonCommand);
+		SquiggleCommand squiggle = new SquiggleCommand();
+		for (int i = 0; i < 100000; i++) {
+			squiggle.add(i % 500, 10000 + i / 500);
+		}
+		commands.add(commands.size() / 2, squiggle);
+		StringWriter out = new StringWriter();
+		PaintFileWriter.save(out, commands);
+		assertTrue(out.getBuffer().length() > PaintFileParser.LARGE_FILE);
+		return out.toString();
+	}
+
+	private static String save(PaintModel model) throws IOException {
+		StringWriter out = new StringWriter();
+		PaintFileWriter.save(out, model.snapshot());
+		return out.toString();
+	}
+
+	/**
+	 * Parse text in parallel chunks from a file and with parse(Reader), and
+	 * check both give the same commands, result and error message.
+	 */
+	private void doParallelTestCase(String text, boolean expected) throws IOException {
+		File file = File.createTempFile("parallel", ".txt");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+			PaintFileParser serial = new PaintFileParser();
+			PaintModel serialModel = new PaintModel();
+			assertEquals(expected, serial.parse(new BufferedReader(new StringReader(text)), serialModel));
+
+			PaintFileParser parallel = new PaintFileParser();
+			PaintModel parallelModel = new PaintModel();
+			assertEquals(expected, parallel.parse(file, parallelModel, pool));
+			assertEquals(serial.getErrorMessage(), parallel.getErrorMessage());
+			assertEquals(serialModel.getCommandCount(), parallelModel.getCommandCount());
+			assertEquals(save(serialModel), save(parallelModel));
+		} finally {
+			pool.shutdown();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void parallelParseTest() throws IOException {
+		this.doParallelTestCase(largeFile(), true);
+	}
+
+	@Test
+	public void parallelParseErrorTest() throws IOException {
+		// A bad line in the last quarter, in a chunk of its own
+		String text = largeFile();
+		int at = text.indexOf("\tradius:", 3 * text.length() / 4);
+		text = text.substring(0, at) + "\tradius:x" + text.substring(at + "\tradius:".length());
+		this.doParallelTestCase(text, false);
+	}
+
+	@Test
+	public void parallelParseResumeTest() throws IOException {
+		// A shape line among the long squiggle's points, just after where
+		// split() starts looking for one, becomes a chunk start where the
+		// parse is not between shapes, so the chunk before has to go on
+		String text = largeFile();
+		int first = text.indexOf("\t\tpoint:(0,10000)\n");
+		int last = text.indexOf("End Squiggle", first);
+		int count = Math.min(16, text.length() / PaintFileParser.MIN_CHUNK);
+		int at = -1;
+		for (int k = 1; k < count && at < 0; k++) {
+			int boundary = (int) ((long) text.length() * k / count);
+			if (boundary > first && boundary + 64 < last) {
+				at = text.indexOf("\t\tpoint:", boundary + 16);
+			}
+		}
+		assertTrue("the squiggle crosses a chunk boundary", at > 0);
+		text = text.substring(0, at) + "Circle\n" + text.substring(at);
+		this.doParallelTestCase(text, false);
+	}
 }
 
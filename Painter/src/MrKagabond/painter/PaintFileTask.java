@@ -0,0 +1,120 @@
+package MrKagabond.painter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javafx.concurrent.Task;
+
+/**
+ * Opening and saving as JavaFX Tasks, to run on a background thread while the
+ * application thread stays free. Progress is the bytes read when opening and
+ * the commands written when saving. Cancelling interrupts the task, which
+ * stops at the next read or command. A parallel save stops at the next
+ * chunk, the commands being read on other threads.
+ */
+public class PaintFileTask {
+
+	/**
+	 * @return a Task that opens file into a new PaintModel, its value. The
+	 *         task fails, with the parser's message, unless the whole file
+	 *         was parsed.
+	 */
+	public static Task<PaintModel> open(final File file) {
+		return open(file, null);
+	}
+
+	/**
+	 * As open(File), timed with metrics, see PaintFileOpener.setMetrics.
+	 */
+	public static Task<PaintModel> open(final File file, final PaintMetrics metrics) {
+		return new Task<PaintModel>() {
+			@Override
+			protected PaintModel call() throws Exception {
+				this.updateMessage("Opening " + file.getName());
+				final long length = file.length();
+				PaintModel paintModel = new PaintModel();
+				PaintFileOpener opener = new PaintFileOpener();
+				opener.setProgress(bytes -> this.updateProgress(bytes, length));
+				opener.setMetrics(metrics);
+				boolean opened = opener.open(file, paintModel);
+				if (this.isCancelled())
+					throw new CancellationException();
+				if (!opened)
+					throw new IOException(file.getName() + ": " + opener.getErrorMessage());
+				return paintModel;
+			}
+		};
+	}
+
+	/**
+	 * @return a Task that saves commands, a PaintModel snapshot, to file in
+	 *         format version 1 (text) or 2 (binary). The file is written
+	 *         under another name and moved into place when complete, so a
+	 *         cancelled or failed save leaves any earlier file as it was.
+	 */
+	public static Task<Void> save(final List<PaintCommand> commands, final File file, final int version) {
+		return save(commands, file, version, null);
+	}
+
+	/**
+	 * As save(List, File, int), timed with metrics, see
+	 * PaintFileConverter.save(List, File, int, PaintMetrics).
+	 */
+	public static Task<Void> save(final List<PaintCommand> commands, final File file, final int version,
+			final PaintMetrics metrics) {
+		return new Task<Void>() {
+			@Override
+			protected Void call() throws Exception {
+				this.updateMessage("Saving " + file.getName());
+				final int size = commands.size();
+				final Thread thread = Thread.currentThread();
+				List<PaintCommand> tracked = new AbstractList<PaintCommand>() {
+					// Read by a parallel save's ForkJoin threads, and again
+					// after saving
+					private final AtomicLong reported = new AtomicLong(-1);
+
+					@Override
+					public PaintCommand get(int i) {
+						if ((i & 0x3ff) == 0) {
+							if (Thread.currentThread() == thread && isCancelled())
+								throw new CancellationException();
+							long last = this.reported.get();
+							if (i > last && this.reported.compareAndSet(last, i)) {
+								updateProgress(i, size);
+							}
+						}
+						return commands.get(i);
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+				};
+				File partial = File.createTempFile("." + file.getName() + ".", ".part", file.getAbsoluteFile().getParentFile());
+				try {
+					PaintFileConverter.save(tracked, partial, version, file.getName().endsWith(".gz"), metrics);
+					if (this.isCancelled())
+						throw new CancellationException();
+					try {
+						Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+								StandardCopyOption.ATOMIC_MOVE);
+					} catch (AtomicMoveNotSupportedException e) {
+						Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					}
+				} finally {
+					Files.deleteIfExists(partial.toPath());
+				}
+				this.updateProgress(size, size);
+				return null;
+			}
+		};
+	}
+}
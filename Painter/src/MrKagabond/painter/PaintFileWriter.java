@@ -0,0 +1,256 @@
+package MrKagabond.painter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the Paint Save File Format, the text format PaintFileParser reads.
+ * Text goes straight into a reused byte buffer: numbers are written digit by
+ * digit, with no Strings per line or per point, and each command writes its
+ * own lines (PaintCommand.writeTo) rather than being tested against every
+ * type.
+ *
+ * The output can be GZIP compressed; PaintFileOpener reads it either way. In
+ * parallel, chunks of commands are written, and compressed, on a
+ * ForkJoinPool and joined in order. Compressed chunks become members of one
+ * GZIP file.
+ */
+public class PaintFileWriter {
+
+	static final int CHUNK = 4096; // commands per chunk in parallel
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private OutputStream out;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int pos = 0;
+	private byte[] digits = new byte[11];
+
+	public PaintFileWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Write commands as a complete save file, flushing but not closing out.
+	 */
+	public static void save(OutputStream out, List<PaintCommand> commands) throws IOException {
+		PaintFileWriter w = new PaintFileWriter(out);
+		w.writeHeader();
+		w.writeCommands(commands, 0, commands.size());
+		w.writeFooter();
+		w.flush();
+	}
+
+	/**
+	 * As save(OutputStream, List), optionally compressed and, given a pool,
+	 * in parallel. Output is flushed, and compressed output finished, but out
+	 * is not closed.
+	 */
+	public static void save(OutputStream out, List<PaintCommand> commands, boolean gzip, ForkJoinPool pool)
+			throws IOException {
+		if (pool == null || pool.getParallelism() < 2 || commands.size() <= CHUNK) {
+			if (gzip) {
+				GZIPOutputStream zip = new GZIPOutputStream(out, BUFFER_SIZE);
+				save(zip, commands);
+				zip.finish();
+			} else {
+				save(out, commands);
+			}
+			out.flush();
+			return;
+		}
+
+		// Keep a few chunks per thread in flight, writing each as it is done
+		ArrayDeque<ForkJoinTask<ByteArrayOutputStream>> chunks = new ArrayDeque<ForkJoinTask<ByteArrayOutputStream>>();
+		int window = 2 * pool.getParallelism();
+		int size = commands.size();
+		for (int start = 0; start < size || !chunks.isEmpty();) {
+			while (start < size && chunks.size() < window) {
+				final int from = start, to = Math.min(size, start + CHUNK);
+				chunks.addLast(pool.submit(() -> chunk(commands, from, to, from == 0, to == size, gzip)));
+				start = to;
+			}
+			try {
+				// Chunks are joined uninterruptibly, so a cancel is seen here
+				if (Thread.currentThread().isInterrupted())
+					throw new InterruptedIOException("Cancelled");
+				chunks.removeFirst().join().writeTo(out);
+			} catch (IOException | RuntimeException e) {
+				for (ForkJoinTask<ByteArrayOutputStream> chunk : chunks) {
+					chunk.cancel(false);
+				}
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw e;
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write commands, as a save file, to writer, which is flushed but not
+	 * closed. The text is ASCII, so bytes are widened to chars.
+	 */
+	public static void save(final Writer writer, List<PaintCommand> commands) throws IOException {
+		save(new OutputStream() {
+			private char[] chars = new char[BUFFER_SIZE];
+
+			@Override
+			public void write(int b) throws IOException {
+				writer.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				while (len > 0) {
+					int n = Math.min(len, this.chars.length);
+					for (int i = 0; i < n; i++) {
+						this.chars[i] = (char) b[off + i];
+					}
+					writer.write(this.chars, 0, n);
+					off += n;
+					len -= n;
+				}
+			}
+
+			@Override
+			public void flush() throws IOException {
+				writer.flush();
+			}
+		}, commands);
+	}
+
+	private static ByteArrayOutputStream chunk(List<PaintCommand> commands, int from, int to, boolean first,
+			boolean last, boolean gzip) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * (to - from));
+			OutputStream out = gzip ? new GZIPOutputStream(bytes, BUFFER_SIZE) : bytes;
+			PaintFileWriter w = new PaintFileWriter(out);
+			if (first) {
+				w.writeHeader();
+			}
+			w.writeCommands(commands, from, to);
+			if (last) {
+				w.writeFooter();
+			}
+			w.flush();
+			out.close();
+			return bytes;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public void writeHeader() throws IOException {
+		this.write("PaintSaveFileVersion1.0\n");
+	}
+
+	public void writeFooter() throws IOException {
+		this.write("EndPaintSaveFile\n");
+	}
+
+	/**
+	 * Write commands [from, to).
+	 */
+	public void writeCommands(List<PaintCommand> commands, int from, int to) throws IOException {
+		for (int i = from; i < to; i++) {
+			commands.get(i).writeTo(this);
+		}
+	}
+
+	public void flush() throws IOException {
+		this.out.write(this.buffer, 0, this.pos);
+		this.pos = 0;
+		this.out.flush();
+	}
+
+	private void ensure(int n) throws IOException {
+		if (this.pos + n > this.buffer.length) {
+			this.out.write(this.buffer, 0, this.pos);
+			this.pos = 0;
+		}
+	}
+
+	// For PaintCommand.writeTo
+
+	/**
+	 * Write s, which must be ASCII and shorter than the buffer.
+	 */
+	void write(String s) throws IOException {
+		int n = s.length();
+		this.ensure(n);
+		byte[] buffer = this.buffer;
+		int pos = this.pos;
+		for (int i = 0; i < n; i++) {
+			buffer[pos++] = (byte) s.charAt(i);
+		}
+		this.pos = pos;
+	}
+
+	void writeInt(int value) throws IOException {
+		this.ensure(11);
+		if (value < 0) {
+			this.buffer[this.pos++] = '-';
+		}
+		// Digits are generated backwards from the negative, which holds
+		// Integer.MIN_VALUE too
+		int v = value < 0 ? value : -value;
+		int n = 0;
+		do {
+			this.digits[n++] = (byte) ('0' - v % 10);
+			v /= 10;
+		} while (v != 0);
+		while (n > 0) {
+			this.buffer[this.pos++] = this.digits[--n];
+		}
+	}
+
+	/**
+	 * Write the color and filled lines every command starts with.
+	 */
+	void writeStyle(PaintCommand c) throws IOException {
+		this.write("\tcolor:");
+		this.writeInt((int) Math.round(c.getColor().getRed() * 255));
+		this.write(",");
+		this.writeInt((int) Math.round(c.getColor().getGreen() * 255));
+		this.write(",");
+		this.writeInt((int) Math.round(c.getColor().getBlue() * 255));
+		this.write(c.isFill() ? "\n\tfilled:true\n" : "\n\tfilled:false\n");
+	}
+
+	/**
+	 * Write p as Point.toString() does, then a new line.
+	 */
+	void writePoint(Point p) throws IOException {
+		if (p == null) {
+			this.write("null\n");
+			return;
+		}
+		this.writePoint(p.x, p.y);
+	}
+
+	void writePoint(int x, int y) throws IOException {
+		this.write("(");
+		this.writeInt(x);
+		this.write(",");
+		this.writeInt(y);
+		this.write(")\n");
+	}
+
+	/**
+	 * Write a line for each point, each starting with prefix.
+	 */
+	void writePoints(PointBuffer points, String prefix) throws IOException {
+		for (int i = 0, n = points.size(); i < n; i++) {
+			this.write(prefix);
+			this.writePoint(points.getX(i), points.getY(i));
+		}
+	}
+}
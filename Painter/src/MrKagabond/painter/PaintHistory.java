@@ -0,0 +1,557 @@
+package MrKagabond.painter;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Undo and redo for a PaintModel. The history records each change as the
+ * small edit that reverses it (a point appended, a radius set, a command
+ * added) rather than as a copy of the drawing, so undoing a step costs about
+ * the same however big the drawing is. Only a reset keeps the commands it
+ * removed, as a snapshot to put back.
+ *
+ * Changes to the command a shape gesture added are folded into that add, so
+ * one undo removes one shape. Once the estimated size of the history passes
+ * the memory limit, the oldest edits are forgotten.
+ */
+public class PaintHistory implements PaintModelListener {
+
+	private PaintModel model;
+	private ArrayDeque<Edit> undoStack = new ArrayDeque<Edit>(); // oldest first
+	private ArrayDeque<Edit> redoStack = new ArrayDeque<Edit>(); // next redo last
+	private long memoryLimit = 64L << 20;
+	private long memoryUsed = 0;
+	private boolean applying = false; // ignore the changes undo and redo make
+
+	public PaintHistory(PaintModel model) {
+		this.model = model;
+		model.addRecorder(this);
+	}
+
+	/**
+	 * Stop recording changes to the model.
+	 */
+	public void detach() {
+		this.model.removeRecorder(this);
+	}
+
+	public boolean canUndo() {
+		return !this.undoStack.isEmpty();
+	}
+
+	public boolean canRedo() {
+		return !this.redoStack.isEmpty();
+	}
+
+	/**
+	 * @return whether there was anything to undo
+	 */
+	public boolean undo() {
+		Edit edit = this.undoStack.pollLast();
+		if (edit == null)
+			return false;
+		this.apply(edit, true);
+		this.redoStack.addLast(edit);
+		return true;
+	}
+
+	/**
+	 * @return whether there was anything to redo
+	 */
+	public boolean redo() {
+		Edit edit = this.redoStack.pollLast();
+		if (edit == null)
+			return false;
+		this.apply(edit, false);
+		this.undoStack.addLast(edit);
+		return true;
+	}
+
+	public void clear() {
+		this.undoStack.clear();
+		this.redoStack.clear();
+		this.memoryUsed = 0;
+	}
+
+	public long getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	/**
+	 * @param memoryLimit the estimated bytes the history may hold before the
+	 *                    oldest edits are dropped
+	 */
+	public void setMemoryLimit(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+		this.evict();
+	}
+
+	/**
+	 * @return the estimated bytes held by the history
+	 */
+	public long getMemoryUsed() {
+		return memoryUsed;
+	}
+
+	public int getUndoCount() {
+		return this.undoStack.size();
+	}
+
+	public int getRedoCount() {
+		return this.redoStack.size();
+	}
+
+	private void apply(Edit edit, boolean undo) {
+		long size = edit.size();
+		this.applying = true;
+		this.model.beginBatch();
+		try {
+			if (undo) {
+				edit.undo(this.model);
+			} else {
+				edit.redo(this.model);
+			}
+		} finally {
+			this.model.endBatch();
+			this.applying = false;
+		}
+		this.memoryUsed += edit.size() - size;
+		this.evict();
+	}
+
+	@Override
+	public void modelChanged(PaintModelEvent event) {
+		if (this.applying)
+			return;
+		this.clearRedo();
+		switch (event.getType()) {
+		case COMMAND_ADDED:
+			this.push(new AddEdit(event.getCommand()));
+			break;
+		case COMMAND_REMOVED:
+			this.push(new RemoveEdit(event.getCommand()));
+			break;
+		case MODEL_RESET:
+			this.push(new ResetEdit(event.getResetCommands()));
+			break;
+		case COMMAND_MUTATED:
+			Edit top = this.undoStack.peekLast();
+			if (top != null) {
+				long size = top.size();
+				if (top.absorb(event)) {
+					this.memoryUsed += top.size() - size;
+					this.evict();
+					return;
+				}
+			}
+			this.push(mutation(event));
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void clearRedo() {
+		while (!this.redoStack.isEmpty()) {
+			this.memoryUsed -= this.redoStack.pollLast().size();
+		}
+	}
+
+	private void push(Edit edit) {
+		this.undoStack.addLast(edit);
+		this.memoryUsed += edit.size();
+		this.evict();
+	}
+
+	/**
+	 * Forget the oldest edits, keeping at least the latest one, until the
+	 * history fits in the memory limit.
+	 */
+	private void evict() {
+		if (this.memoryUsed <= this.memoryLimit)
+			return;
+		// Redo only happens after undoing everything newer, so the farthest
+		// redo goes before any undo
+		while (this.memoryUsed > this.memoryLimit && !this.redoStack.isEmpty()) {
+			this.memoryUsed -= this.redoStack.pollFirst().size();
+		}
+		while (this.memoryUsed > this.memoryLimit && this.undoStack.size() > 1) {
+			this.memoryUsed -= this.undoStack.pollFirst().size();
+		}
+	}
+
+	private static Edit mutation(PaintModelEvent event) {
+		PaintCommand command = event.getCommand();
+		switch (event.getDelta()) {
+		case POINT_APPENDED:
+			return new AppendEdit(command);
+		case POINT_REMOVED:
+			return new RemovePointEdit(command, event.getOldX(), event.getOldY());
+		case POINTS_REPLACED:
+			return new ReplacePointsEdit(command, event.getOldPoints());
+		case POINTS_TRUNCATED:
+			return new TruncateEdit(command, event.getOldPoints());
+		case STYLE:
+			return new StyleEdit(command, event.getOldColor(), event.isOldFill());
+		default:
+			return new ValueEdit(command, event.getDelta(), event.getOldX(), event.getOldY());
+		}
+	}
+
+	// Rough sizes, in bytes, of what an edit keeps alive
+	private static final long EDIT_SIZE = 32;
+
+	private static long estimate(int[] xy) {
+		return xy == null ? 0 : 16 + 4L * xy.length;
+	}
+
+	private static long estimate(PaintCommand c) {
+		if (c instanceof SquiggleCommand || c instanceof PolygonCommand) {
+			return 96 + 8L * points(c).size();
+		}
+		return 96;
+	}
+
+	private static long estimate(List<PaintCommand> commands) {
+		long size = 16 + 4L * commands.size();
+		for (PaintCommand c : commands) {
+			size += estimate(c);
+		}
+		return size;
+	}
+
+	// Squiggles and polygons store their points the same way
+
+	private static PointBuffer points(PaintCommand c) {
+		if (c instanceof SquiggleCommand) {
+			return ((SquiggleCommand) c).getPointBuffer();
+		}
+		return ((PolygonCommand) c).getPointBuffer();
+	}
+
+	private static void setPoints(PaintCommand c, int[] xy) {
+		if (c instanceof SquiggleCommand) {
+			((SquiggleCommand) c).setPoints(xy);
+		} else {
+			((PolygonCommand) c).setPoints(xy);
+		}
+	}
+
+	private static int[] truncate(PaintCommand c, int size) {
+		if (c instanceof SquiggleCommand) {
+			return ((SquiggleCommand) c).truncate(size);
+		}
+		return ((PolygonCommand) c).truncate(size);
+	}
+
+	private static void addPoints(PaintCommand c, int[] xy) {
+		for (int i = 0; i < xy.length; i += 2) {
+			addPoint(c, xy[i], xy[i + 1]);
+		}
+	}
+
+	private static void addPoint(PaintCommand c, int x, int y) {
+		if (c instanceof SquiggleCommand) {
+			((SquiggleCommand) c).add(x, y);
+		} else {
+			((PolygonCommand) c).add(x, y);
+		}
+	}
+
+	/**
+	 * One step of the history. Undo and redo are called alternately, undo
+	 * first.
+	 */
+	private abstract static class Edit {
+		final PaintCommand command;
+
+		Edit(PaintCommand command) {
+			this.command = command;
+		}
+
+		abstract void undo(PaintModel model);
+
+		abstract void redo(PaintModel model);
+
+		long size() {
+			return EDIT_SIZE;
+		}
+
+		/**
+		 * @return whether the change was folded into this edit
+		 */
+		boolean absorb(PaintModelEvent event) {
+			return false;
+		}
+	}
+
+	private static class AddEdit extends Edit {
+		private long retained = 0; // the command, while only the history has it
+
+		AddEdit(PaintCommand command) {
+			super(command);
+		}
+
+		void undo(PaintModel model) {
+			model.removeLastCommand();
+			this.retained = estimate(this.command);
+		}
+
+		void redo(PaintModel model) {
+			model.addCommand(this.command);
+			this.retained = 0;
+		}
+
+		long size() {
+			return EDIT_SIZE + this.retained;
+		}
+
+		// The command keeps its own state, so shaping the shape just added
+		// needs no edit of its own
+		boolean absorb(PaintModelEvent event) {
+			return event.getCommand() == this.command;
+		}
+	}
+
+	private static class RemoveEdit extends Edit {
+		private long retained;
+
+		RemoveEdit(PaintCommand command) {
+			super(command);
+			this.retained = estimate(command);
+		}
+
+		void undo(PaintModel model) {
+			model.addCommand(this.command);
+			this.retained = 0;
+		}
+
+		void redo(PaintModel model) {
+			model.removeLastCommand();
+			this.retained = estimate(this.command);
+		}
+
+		long size() {
+			return EDIT_SIZE + this.retained;
+		}
+	}
+
+	private static class ResetEdit extends Edit {
+		private List<PaintCommand> commands;
+		private long retained;
+
+		ResetEdit(List<PaintCommand> commands) {
+			super(null);
+			this.commands = commands;
+			this.retained = estimate(commands);
+		}
+
+		void undo(PaintModel model) {
+			model.addCommands(this.commands);
+			this.retained = 0;
+		}
+
+		void redo(PaintModel model) {
+			model.reset();
+			this.retained = estimate(this.commands);
+		}
+
+		long size() {
+			return EDIT_SIZE + this.retained;
+		}
+	}
+
+	/**
+	 * Points appended to the end of a squiggle or polygon.
+	 */
+	private static class AppendEdit extends Edit {
+		private int count = 1;
+		private int[] tail; // the points taken off by undo
+
+		AppendEdit(PaintCommand command) {
+			super(command);
+		}
+
+		void undo(PaintModel model) {
+			this.tail = truncate(this.command, points(this.command).size() - this.count);
+		}
+
+		void redo(PaintModel model) {
+			addPoints(this.command, this.tail);
+			this.tail = null;
+		}
+
+		long size() {
+			return EDIT_SIZE + estimate(this.tail);
+		}
+
+		boolean absorb(PaintModelEvent event) {
+			if (event.getCommand() == this.command && event.getDelta() == PaintModelEvent.Delta.POINT_APPENDED) {
+				this.count++;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Points taken off the end of a squiggle or polygon, the inverse of an
+	 * AppendEdit.
+	 */
+	private static class TruncateEdit extends Edit {
+		private int[] removed;
+
+		TruncateEdit(PaintCommand command, int[] removed) {
+			super(command);
+			this.removed = removed;
+		}
+
+		void undo(PaintModel model) {
+			addPoints(this.command, this.removed);
+		}
+
+		void redo(PaintModel model) {
+			this.removed = truncate(this.command, points(this.command).size() - this.removed.length / 2);
+		}
+
+		long size() {
+			return EDIT_SIZE + estimate(this.removed);
+		}
+	}
+
+	/**
+	 * The last point of a polygon popped.
+	 */
+	private static class RemovePointEdit extends Edit {
+		private int x, y;
+
+		RemovePointEdit(PaintCommand command, int x, int y) {
+			super(command);
+			this.x = x;
+			this.y = y;
+		}
+
+		void undo(PaintModel model) {
+			addPoint(this.command, this.x, this.y);
+		}
+
+		void redo(PaintModel model) {
+			((PolygonCommand) this.command).pop();
+		}
+	}
+
+	private static class ReplacePointsEdit extends Edit {
+		private int[] other; // the points undo or redo puts back
+
+		ReplacePointsEdit(PaintCommand command, int[] oldPoints) {
+			super(command);
+			this.other = oldPoints;
+		}
+
+		void undo(PaintModel model) {
+			int[] current = points(this.command).toArray();
+			setPoints(this.command, this.other);
+			this.other = current;
+		}
+
+		void redo(PaintModel model) {
+			this.undo(model);
+		}
+
+		long size() {
+			return EDIT_SIZE + estimate(this.other);
+		}
+
+		boolean absorb(PaintModelEvent event) {
+			return event.getCommand() == this.command && event.getDelta() == PaintModelEvent.Delta.POINTS_REPLACED;
+		}
+	}
+
+	/**
+	 * A centre, corner or radius set. Undo and redo swap the value held here
+	 * with the command's.
+	 */
+	private static class ValueEdit extends Edit {
+		private PaintModelEvent.Delta delta;
+		private int x, y;
+
+		ValueEdit(PaintCommand command, PaintModelEvent.Delta delta, int x, int y) {
+			super(command);
+			this.delta = delta;
+			this.x = x;
+			this.y = y;
+		}
+
+		void undo(PaintModel model) {
+			int x = this.x, y = this.y;
+			switch (this.delta) {
+			case CENTRE:
+				CircleCommand circle = (CircleCommand) this.command;
+				this.remember(circle.getCentre());
+				circle.setCentre(new Point(x, y));
+				break;
+			case RADIUS:
+				circle = (CircleCommand) this.command;
+				this.x = circle.getRadius();
+				circle.setRadius(x);
+				break;
+			case P1:
+				RectangleCommand rectangle = (RectangleCommand) this.command;
+				this.remember(rectangle.getP1());
+				rectangle.setP1(new Point(x, y));
+				break;
+			case P2:
+				rectangle = (RectangleCommand) this.command;
+				this.remember(rectangle.getP2());
+				rectangle.setP2(new Point(x, y));
+				break;
+			default:
+				break;
+			}
+		}
+
+		void redo(PaintModel model) {
+			this.undo(model);
+		}
+
+		private void remember(Point p) {
+			this.x = p.x;
+			this.y = p.y;
+		}
+
+		// Keep the value from before the first of a run of changes
+		boolean absorb(PaintModelEvent event) {
+			return event.getCommand() == this.command && event.getDelta() == this.delta;
+		}
+	}
+
+	private static class StyleEdit extends Edit {
+		private Color color;
+		private boolean fill;
+
+		StyleEdit(PaintCommand command, Color color, boolean fill) {
+			super(command);
+			this.color = color;
+			this.fill = fill;
+		}
+
+		void undo(PaintModel model) {
+			Color color = this.command.getColor();
+			boolean fill = this.command.isFill();
+			this.command.setColor(this.color);
+			this.command.setFill(this.fill);
+			this.color = color;
+			this.fill = fill;
+		}
+
+		void redo(PaintModel model) {
+			this.undo(model);
+		}
+
+		boolean absorb(PaintModelEvent event) {
+			return event.getCommand() == this.command && event.getDelta() == PaintModelEvent.Delta.STYLE;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package MrKagabond.painter;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+
+public class PaintHistoryTest {
+
+	private static MouseEvent press(MouseButton button, int x, int y) {
+		return new MouseEvent(MouseEvent.MOUSE_PRESSED, x, y, x, y, button, 1, false, false, false, false,
+				button == MouseButton.PRIMARY, false, button == MouseButton.SECONDARY, false, false, false, null);
+	}
+
+	@Test
+	public void testUndoAppendKeepsOnlyTheTail() {
+		PaintModel model = new PaintModel();
+		PaintHistory history = new PaintHistory(model);
+		SquiggleCommand squiggle = new SquiggleCommand();
+		model.addCommand(squiggle);
+		for (int i = 0; i < 100; i++) {
+			squiggle.add(i, i % 7);
+		}
+		int[] before = squiggle.getPointBuffer().toArray();
+		model.addCommand(new CircleCommand(new Point(5, 5), 5));
+		for (int i = 0; i < 50; i++) {
+			squiggle.add(200 + i, 3);
+		}
+		int[] after = squiggle.getPointBuffer().toArray();
+
+		history.undo();
+		assertArrayEquals(before, squiggle.getPointBuffer().toArray());
+		assertEquals(99, squiggle.getBounds().maxX);
+		assertNull("old points are not kept by the command", squiggle.oldPoints);
+		assertTrue("only the tail is kept", history.getMemoryUsed() < 100 * 8);
+
+		history.redo();
+		assertArrayEquals(after, squiggle.getPointBuffer().toArray());
+	}
+
+	@Test
+	public void testSimplifyDoesNotKeepOldPoints() {
+		PaintModel model = new PaintModel();
+		new PaintHistory(model);
+		SquiggleCommand squiggle = new SquiggleCommand();
+		model.addCommand(squiggle);
+		for (int i = 0; i < 100; i++) {
+			squiggle.add(i, 0);
+		}
+		squiggle.simplify(1);
+		assertEquals(2, squiggle.getPointCount());
+		assertNull(squiggle.oldPoints);
+	}
+
+	@Test
+	public void testUndoAfterFinishStartsANewPolygon() {
+		PaintModel model = new PaintModel();
+		PaintHistory history = new PaintHistory(model);
+		PolygonManipulatorStrategy strategy = new PolygonManipulatorStrategy(model);
+		strategy.handle(press(MouseButton.PRIMARY, 10, 10));
+		strategy.handle(press(MouseButton.PRIMARY, 50, 10));
+
+		strategy.finish();
+		history.undo();
+		assertEquals(0, model.getCommandCount());
+
+		strategy.handle(press(MouseButton.PRIMARY, 20, 20));
+		assertEquals(1, model.getCommandCount());
+		assertEquals(Arrays.asList(new Point(20, 20)).toString(),
+				((PolygonCommand) model.getCommand(0)).getPoints().toString());
+	}
+}
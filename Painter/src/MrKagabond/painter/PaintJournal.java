@@ -0,0 +1,795 @@
+package MrKagabond.painter;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Autosave for a PaintModel: an append-only journal of its changes, each
+ * written as the small record that redoes it (a command added, a point
+ * appended, a colour set), so the cost of saving an edit does not depend on
+ * the size of the drawing.
+ *
+ * Records are collected in memory and sealed into a batch whenever the model
+ * is between changes, so a batch never holds half of an undo or a load. A
+ * background thread appends the sealed batches to the journal file every
+ * flush interval, each framed by its length and a CRC32, and forces them to
+ * disk as the Sync policy says. Once the journal outgrows the drawing, it is
+ * compacted: the drawing is written as a full binary save file, the base,
+ * and a new, empty journal starts from it. The base is encoded on the
+ * journal thread too, apart from the few bytes of each command that are not
+ * points.
+ *
+ * In the directory given, the journal is "autosave.journal" and the base of
+ * generation g is "autosave-g.paint", an ordinary save file. The journal
+ * header names its generation, so a crash part way through a compaction
+ * leaves either the old base and journal or the new ones. recover() reads
+ * the base and replays the journal up to the first incomplete batch.
+ *
+ * A program using the journal lock()s its directory, so that a second one
+ * running at the same time does not take the live journal for one left by
+ * a crash. The second keeps its journal in a directory of its own.
+ */
+public class PaintJournal implements PaintModelListener {
+
+	/**
+	 * When written batches are forced to disk. Written but unforced batches
+	 * survive the program crashing, not the machine.
+	 */
+	public enum Sync {
+		/** after every write */
+		ALWAYS,
+		/** at most once every sync interval */
+		PERIODIC,
+		/** only when compacting, otherwise left to the operating system */
+		NEVER
+	}
+
+	static final byte[] MAGIC = { (byte) 0x89, 'P', 'S', 'J' };
+	static final int VERSION = 1;
+	private static final int HEADER_SIZE = MAGIC.length + 1 + 8;
+
+	// Record types, each followed by the command index, except RESET. A
+	// MUTATED record's type is MUTATED plus the Delta ordinal.
+	static final int ADDED = 1, REMOVED = 2, RESET = 3, MUTATED = 16;
+
+	private File directory;
+	private File journalFile;
+	private FileChannel lockChannel;
+	private FileLock lock;
+	private Sync sync = Sync.ALWAYS;
+	private long flushInterval = 1000; // ms
+	private long syncInterval = 5000; // ms, for PERIODIC
+	private long compactionThreshold = 1 << 20;
+
+	private PaintModel model;
+	private ByteArrayOutputStream open = new ByteArrayOutputStream(); // records since the model was last between changes
+	private PaintBinaryFormat.Writer writer = new PaintBinaryFormat.Writer(this.open, 4096);
+	private long written = 0; // bytes sealed since the last compaction
+	private long baseSize = 0;
+
+	// Shared with the journal thread, guarded by this.sealed
+	private ByteArrayOutputStream sealed = new ByteArrayOutputStream(); // batches waiting to be written
+	private long generation = 0; // of the newest base, written or not
+	private long fileGeneration = -1; // of the journal file open now
+
+	// Used only on the journal thread
+	private FileChannel channel;
+	private long lastSync = 0;
+	private CRC32 crc = new CRC32();
+
+	private ScheduledExecutorService executor;
+	private ScheduledFuture<?> flusher;
+
+	/**
+	 * A journal kept in directory, which is created if need be. Nothing is
+	 * written until a model is attached.
+	 */
+	public PaintJournal(File directory) {
+		this.setDirectory(directory);
+	}
+
+	private void setDirectory(File directory) {
+		this.directory = directory;
+		this.journalFile = new File(directory, "autosave.journal");
+		this.generation = 0;
+		this.fileGeneration = -1;
+		// Carry on from the generation there, so its base is not overwritten
+		try (DataInputStream in = new DataInputStream(new FileInputStream(this.journalFile))) {
+			this.generation = this.fileGeneration = readHeader(in);
+		} catch (IOException e) {
+			// None yet
+		}
+	}
+
+	/**
+	 * Lock the directory for this program until close() or discard(). If
+	 * another program has it locked, use and lock the first of its
+	 * subdirectories "instance-1", "instance-2" and so on that is free
+	 * instead. Call this before anything else.
+	 *
+	 * @return the directory now used
+	 */
+	public File lock() throws IOException {
+		File root = this.directory;
+		for (int i = 1; !this.tryLock(); i++) {
+			this.setDirectory(new File(root, "instance-" + i));
+		}
+		return this.directory;
+	}
+
+	private boolean tryLock() throws IOException {
+		this.directory.mkdirs();
+		FileChannel channel = FileChannel.open(new File(this.directory, "autosave.lock").toPath(),
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		try {
+			this.lock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			this.lock = null; // held by another journal in this program
+		}
+		if (this.lock == null) {
+			channel.close();
+			return false;
+		}
+		this.lockChannel = channel;
+		return true;
+	}
+
+	private void unlock() {
+		if (this.lockChannel == null)
+			return;
+		try {
+			this.lockChannel.close(); // releasing the lock
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		this.lockChannel = null;
+		this.lock = null;
+	}
+
+	/**
+	 * @return the directory the journal is kept in
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	public Sync getSync() {
+		return sync;
+	}
+
+	public void setSync(Sync sync) {
+		this.sync = sync;
+	}
+
+	/**
+	 * @param flushInterval milliseconds between writes of the sealed batches,
+	 *                      from the next attach()
+	 */
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * @param syncInterval the least milliseconds between forces for PERIODIC
+	 */
+	public void setSyncInterval(long syncInterval) {
+		this.syncInterval = syncInterval;
+	}
+
+	/**
+	 * @param compactionThreshold the journal is compacted once it holds this
+	 *                            many bytes and more than the base does
+	 */
+	public void setCompactionThreshold(long compactionThreshold) {
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * @return whether the directory holds a journal, left by a program that
+	 *         did not discard() it
+	 */
+	public boolean canRecover() {
+		return this.journalFile.isFile();
+	}
+
+	/**
+	 * Add the drawing the journal holds to model: the base save file, then
+	 * each complete batch of the journal, stopping at one that was cut short
+	 * or does not fit the drawing.
+	 *
+	 * @return whether all of the journal was read
+	 */
+	public boolean recover(PaintModel model) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.journalFile)))) {
+			long generation = readHeader(in);
+			if (generation > 0) {
+				try (BufferedInputStream base = new BufferedInputStream(new FileInputStream(this.baseFile(generation)))) {
+					PaintBinaryFormat format = new PaintBinaryFormat();
+					if (!format.parse(base, model))
+						throw new IOException("Autosave base: " + format.getErrorMessage());
+				}
+			}
+			PaintBinaryFormat reader = new PaintBinaryFormat();
+			CRC32 crc = new CRC32();
+			model.beginBatch();
+			try {
+				while (true) {
+					int length;
+					try {
+						length = in.readInt();
+					} catch (EOFException e) {
+						return true;
+					}
+					int checksum = in.readInt();
+					if (length < 0 || length > this.journalFile.length())
+						return false;
+					byte[] batch = new byte[length];
+					in.readFully(batch);
+					crc.reset();
+					crc.update(batch, 0, length);
+					if ((int) crc.getValue() != checksum)
+						return false;
+					reader.start(new ByteArrayInputStream(batch));
+					try {
+						while (!reader.atEnd()) {
+							if (!replay(reader, model))
+								return false;
+						}
+					} catch (IOException e) {
+						return false; // a record that does not parse
+					}
+				}
+			} catch (EOFException e) {
+				return false; // the last batch was cut short
+			} finally {
+				model.endBatch();
+			}
+		}
+	}
+
+	/**
+	 * Apply the next record from reader to model.
+	 *
+	 * @return false if the record does not fit model
+	 */
+	static boolean replay(PaintBinaryFormat reader, PaintModel model) throws IOException {
+		int type = reader.read();
+		if (type == RESET) {
+			model.reset();
+			return true;
+		}
+		long index = reader.readVarint();
+		int count = model.getCommandCount();
+		if (type == ADDED) {
+			if (index != count)
+				return false;
+			model.addCommand(reader.readCommand());
+			return true;
+		}
+		if (index < 0 || index >= count)
+			return false;
+		if (type == REMOVED) {
+			if (index != count - 1)
+				return false;
+			model.removeLastCommand();
+			return true;
+		}
+		PaintModelEvent.Delta[] deltas = PaintModelEvent.Delta.values();
+		if (type < MUTATED || type >= MUTATED + deltas.length)
+			return false;
+		PaintCommand c = model.getCommand((int) index);
+		switch (deltas[type - MUTATED]) {
+		case POINT_APPENDED:
+			int x = reader.readInt(), y = reader.readInt();
+			if (c instanceof SquiggleCommand) {
+				((SquiggleCommand) c).add(x, y);
+			} else if (c instanceof PolygonCommand) {
+				((PolygonCommand) c).add(x, y);
+			} else {
+				return false;
+			}
+			return true;
+		case POINT_REMOVED:
+			PointBuffer points = pointsOf(c);
+			if (points == null || points.size() == 0)
+				return false;
+			truncate(c, points.size() - 1);
+			return true;
+		case POINTS_TRUNCATED:
+			points = pointsOf(c);
+			long size = reader.readVarint();
+			if (points == null || size < 0 || size > points.size())
+				return false;
+			truncate(c, (int) size);
+			return true;
+		case POINTS_REPLACED:
+			if (pointsOf(c) == null)
+				return false;
+			setPoints(c, reader.readPoints());
+			return true;
+		case CENTRE:
+			if (!(c instanceof CircleCommand))
+				return false;
+			((CircleCommand) c).setCentre(new Point(reader.readInt(), reader.readInt()));
+			return true;
+		case RADIUS:
+			if (!(c instanceof CircleCommand))
+				return false;
+			((CircleCommand) c).setRadius(reader.readInt());
+			return true;
+		case P1:
+		case P2:
+			if (!(c instanceof RectangleCommand))
+				return false;
+			Point p = new Point(reader.readInt(), reader.readInt());
+			if (type - MUTATED == PaintModelEvent.Delta.P1.ordinal()) {
+				((RectangleCommand) c).setP1(p);
+			} else {
+				((RectangleCommand) c).setP2(p);
+			}
+			return true;
+		default: // STYLE
+			c.setColor(reader.readColor());
+			c.setFill(reader.readFill());
+			return true;
+		}
+	}
+
+	private static PointBuffer pointsOf(PaintCommand c) {
+		if (c instanceof SquiggleCommand)
+			return ((SquiggleCommand) c).getPointBuffer();
+		if (c instanceof PolygonCommand)
+			return ((PolygonCommand) c).getPointBuffer();
+		return null;
+	}
+
+	private static void truncate(PaintCommand c, int size) {
+		if (c instanceof SquiggleCommand) {
+			((SquiggleCommand) c).truncate(size);
+		} else {
+			((PolygonCommand) c).truncate(size);
+		}
+	}
+
+	private static void setPoints(PaintCommand c, int[] xy) {
+		if (c instanceof SquiggleCommand) {
+			((SquiggleCommand) c).setPoints(xy);
+		} else {
+			((PolygonCommand) c).setPoints(xy);
+		}
+	}
+
+	/**
+	 * Journal model from now on, in place of any model attached before. The
+	 * drawing as it is becomes the new base.
+	 */
+	public void attach(PaintModel model) {
+		if (this.model != null) {
+			this.detach();
+		}
+		if (this.executor == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread thread = new Thread(r, "Paint journal");
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+			this.executor = executor;
+			this.flusher = executor.scheduleWithFixedDelay(this::flushSealed, this.flushInterval, this.flushInterval,
+					TimeUnit.MILLISECONDS);
+		}
+		this.model = model;
+		this.open.reset();
+		model.addRecorder(this);
+		model.addListener(this.sealer);
+		this.compact();
+	}
+
+	/**
+	 * Stop journalling the attached model. What was journalled stays.
+	 */
+	public void detach() {
+		if (this.model == null)
+			return;
+		this.model.removeRecorder(this);
+		this.model.removeListener(this.sealer);
+		this.seal();
+		this.model = null;
+	}
+
+	/**
+	 * Write everything journalled so far, waiting until it is written.
+	 */
+	public void flush() {
+		this.seal();
+		if (this.executor != null) {
+			try {
+				this.executor.submit(this::flushSealed).get();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Detach, write everything journalled, stop the journal thread and
+	 * unlock. The files stay, for recover().
+	 */
+	public void close() {
+		this.detach();
+		this.flush();
+		this.shutdown();
+		this.unlock();
+	}
+
+	/**
+	 * Move the journal and its base, as they are, into a new subdirectory
+	 * "declined-t", t the time now, where a PaintJournal can still recover
+	 * them. The journal then starts afresh, as when the drawing it holds is
+	 * not wanted now but should not be lost. Call this before attach().
+	 *
+	 * @return the subdirectory, or null if there was no journal
+	 */
+	public File setAside() throws IOException {
+		if (!this.canRecover())
+			return null;
+		File aside = new File(this.directory, "declined-" + System.currentTimeMillis());
+		Files.createDirectory(aside.toPath());
+		if (this.fileGeneration > 0) {
+			File base = this.baseFile(this.fileGeneration);
+			if (base.isFile()) {
+				move(base, new File(aside, base.getName()));
+			}
+		}
+		move(this.journalFile, new File(aside, this.journalFile.getName()));
+		this.generation = 0;
+		this.fileGeneration = -1;
+		return aside;
+	}
+
+	/**
+	 * Detach, stop the journal thread, delete the journal and its bases, as
+	 * when the drawing no longer needs recovering, and unlock.
+	 */
+	public void discard() {
+		this.detach();
+		this.shutdown();
+		synchronized (this.sealed) {
+			this.sealed.reset();
+		}
+		this.journalFile.delete();
+		File[] bases = this.directory.listFiles((dir, name) -> name.startsWith("autosave-") && name.endsWith(".paint"));
+		if (bases != null) {
+			for (File base : bases) {
+				base.delete();
+			}
+		}
+		this.unlock();
+	}
+
+	private void shutdown() {
+		if (this.executor == null)
+			return;
+		this.flusher.cancel(false);
+		this.executor.shutdown();
+		try {
+			this.executor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.executor = null;
+		this.closeChannel();
+	}
+
+	@Override
+	public void modelChanged(PaintModelEvent event) {
+		try {
+			PaintBinaryFormat.Writer w = this.writer;
+			PaintCommand c = event.getCommand();
+			switch (event.getType()) {
+			case COMMAND_ADDED:
+				w.write(ADDED);
+				w.writeVarint(c.z);
+				w.writeCommand(c);
+				break;
+			case COMMAND_REMOVED:
+				w.write(REMOVED);
+				w.writeVarint(c.z);
+				break;
+			case MODEL_RESET:
+				w.write(RESET);
+				break;
+			case COMMAND_MUTATED:
+				PaintModelEvent.Delta delta = event.getDelta();
+				w.write(MUTATED + delta.ordinal());
+				w.writeVarint(c.z);
+				this.writeMutation(c, delta);
+				break;
+			default:
+				break;
+			}
+			w.flush();
+		} catch (IOException e) {
+			// Cannot happen writing to memory
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void writeMutation(PaintCommand c, PaintModelEvent.Delta delta) throws IOException {
+		PaintBinaryFormat.Writer w = this.writer;
+		switch (delta) {
+		case POINT_APPENDED:
+			PointBuffer points = pointsOf(c);
+			w.writeInt(points.getX(points.size() - 1));
+			w.writeInt(points.getY(points.size() - 1));
+			break;
+		case POINT_REMOVED:
+			break;
+		case POINTS_REPLACED:
+			w.writePoints(pointsOf(c));
+			break;
+		case POINTS_TRUNCATED:
+			w.writeVarint(pointsOf(c).size());
+			break;
+		case CENTRE:
+			w.writeInt(((CircleCommand) c).getCentre().x);
+			w.writeInt(((CircleCommand) c).getCentre().y);
+			break;
+		case RADIUS:
+			w.writeInt(((CircleCommand) c).getRadius());
+			break;
+		case P1:
+			w.writeInt(((RectangleCommand) c).getP1().x);
+			w.writeInt(((RectangleCommand) c).getP1().y);
+			break;
+		case P2:
+			w.writeInt(((RectangleCommand) c).getP2().x);
+			w.writeInt(((RectangleCommand) c).getP2().y);
+			break;
+		case STYLE:
+			w.writeColor(c.getColor());
+			w.writeFill(c.isFill());
+			break;
+		}
+	}
+
+	// Listeners hear of changes only when the model is between them, the
+	// time to seal the open records into a batch
+	private PaintModelListener sealer = event -> {
+		this.seal();
+		if (this.written > this.compactionThreshold && this.written > this.baseSize) {
+			this.compact();
+		}
+	};
+
+	private void seal() {
+		if (this.open.size() == 0)
+			return;
+		synchronized (this.sealed) {
+			this.sealed.write(this.open.toByteArray(), 0, this.open.size());
+		}
+		this.written += this.open.size();
+		this.open.reset();
+	}
+
+	/**
+	 * Start a new generation whose base is the drawing as it is now, taken
+	 * from a snapshot and written on the journal thread. Sealed batches not
+	 * yet written are already in it. Call this on the thread that changes the
+	 * model, between changes.
+	 */
+	public void compact() {
+		if (this.model == null)
+			return;
+		// The snapshot's list does not change, but its commands may before
+		// the journal thread gets to them. Everything but their points is
+		// encoded here, which is a few bytes each; the points are shared.
+		BaseWriter base = new BaseWriter();
+		try {
+			PaintBinaryFormat.save(base, this.model.snapshot());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		this.open.reset();
+		final long generation;
+		synchronized (this.sealed) {
+			this.sealed.reset();
+			generation = ++this.generation;
+		}
+		this.written = 0;
+		this.baseSize = base.estimateSize();
+		this.executor.execute(() -> this.writeBase(generation, base));
+	}
+
+	/**
+	 * Encodes a base as PaintBinaryFormat.save does, except that each
+	 * command's points are left out and their PointBuffer shared, to be
+	 * encoded into place later by toByteArray().
+	 */
+	static class BaseWriter extends PaintBinaryFormat.Writer {
+		final ByteArrayOutputStream head;
+		private List<int[]> points = new ArrayList<int[]>();
+		private int[] sizes = new int[16], marks = new int[16]; // per entry in points
+		private long pointCount = 0;
+
+		BaseWriter() {
+			this(new ByteArrayOutputStream());
+		}
+
+		private BaseWriter(ByteArrayOutputStream head) {
+			super(head, 4096);
+			this.head = head;
+		}
+
+		@Override
+		void writePoints(PointBuffer points) throws IOException {
+			int i = this.points.size();
+			if (i == this.sizes.length) {
+				this.sizes = Arrays.copyOf(this.sizes, 2 * i);
+				this.marks = Arrays.copyOf(this.marks, 2 * i);
+			}
+			this.flush();
+			this.marks[i] = this.head.size();
+			this.sizes[i] = points.size();
+			this.points.add(points.share());
+			this.pointCount += points.size();
+		}
+
+		/**
+		 * @return roughly the bytes toByteArray() will return
+		 */
+		long estimateSize() {
+			return this.head.size() + 2 * this.pointCount;
+		}
+
+		/**
+		 * @return the complete save file, points included
+		 */
+		byte[] toByteArray() throws IOException {
+			byte[] head = this.head.toByteArray();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(1 << 30, this.estimateSize()));
+			PaintBinaryFormat.Writer w = new PaintBinaryFormat.Writer(bytes);
+			int from = 0;
+			for (int i = 0; i < this.points.size(); i++) {
+				bytes.write(head, from, this.marks[i] - from);
+				w.writePoints(this.points.get(i), this.sizes[i]);
+				w.flush();
+				from = this.marks[i];
+			}
+			bytes.write(head, from, head.length - from);
+			return bytes.toByteArray();
+		}
+	}
+
+	// On the journal thread from here on
+
+	private File baseFile(long generation) {
+		return new File(this.directory, "autosave-" + generation + ".paint");
+	}
+
+	private static long readHeader(DataInputStream in) throws IOException {
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (in.read() != (MAGIC[i] & 0xff))
+				throw new IOException("Not a Paint journal");
+		}
+		if (in.read() != VERSION)
+			throw new IOException("Unsupported journal version");
+		return in.readLong();
+	}
+
+	/**
+	 * Write base as generation's base save file, then replace the journal
+	 * with an empty one of that generation and delete the old base.
+	 */
+	private void writeBase(long generation, BaseWriter base) {
+		try {
+			this.directory.mkdirs();
+			File baseFile = this.baseFile(generation);
+			writeFile(baseFile, base.toByteArray());
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.put(MAGIC).put((byte) VERSION).putLong(generation);
+			File journal = new File(this.directory, "autosave.journal.new");
+			writeFile(journal, header.array());
+			this.closeChannel();
+			move(journal, this.journalFile);
+			this.channel = FileChannel.open(this.journalFile.toPath(), StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+
+			long old;
+			synchronized (this.sealed) {
+				old = this.fileGeneration;
+				this.fileGeneration = generation;
+			}
+			if (old > 0) {
+				this.baseFile(old).delete();
+			}
+			this.flushSealed();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void writeFile(File file, byte[] bytes) throws IOException {
+		try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+			out.force(true);
+		}
+	}
+
+	private static void move(File from, File to) throws IOException {
+		try {
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Append the sealed batches to the journal as one batch, once the
+	 * journal of the latest generation is open.
+	 */
+	private void flushSealed() {
+		byte[] batch;
+		synchronized (this.sealed) {
+			if (this.sealed.size() == 0 || this.fileGeneration != this.generation || this.channel == null)
+				return;
+			batch = this.sealed.toByteArray();
+			this.sealed.reset();
+		}
+		try {
+			this.crc.reset();
+			this.crc.update(batch, 0, batch.length);
+			ByteBuffer frame = ByteBuffer.allocate(8 + batch.length);
+			frame.putInt(batch.length).putInt((int) this.crc.getValue()).put(batch).flip();
+			while (frame.hasRemaining()) {
+				this.channel.write(frame);
+			}
+			long now = System.currentTimeMillis();
+			if (this.sync == Sync.ALWAYS || this.sync == Sync.PERIODIC && now - this.lastSync >= this.syncInterval) {
+				this.channel.force(false);
+				this.lastSync = now;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void closeChannel() {
+		if (this.channel == null)
+			return;
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		this.channel = null;
+	}
+}
@@ -0,0 +1,197 @@
+package MrKagabond.painter;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import javafx.scene.paint.Color;
+
+public class PaintJournalTest {
+
+	private static String describe(PaintModel model) {
+		StringBuilder sb = new StringBuilder();
+		for (PaintCommand c : model.snapshot()) {
+			sb.append(c.getClass().getSimpleName()).append(c.getBounds()).append(c.getColor()).append(c.isFill());
+			if (c instanceof SquiggleCommand) {
+				sb.append(Arrays.toString(((SquiggleCommand) c).getPointBuffer().toArray()));
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static void draw(PaintModel model, PaintHistory history) {
+		for (int i = 0; i < 20; i++) {
+			SquiggleCommand squiggle = new SquiggleCommand();
+			model.addCommand(squiggle);
+			for (int j = 0; j < 10; j++) {
+				squiggle.add(i * 10 + j, j * j);
+			}
+			CircleCommand circle = new CircleCommand(new Point(i, i), 1);
+			model.addCommand(circle);
+			circle.setRadius(5 + i);
+			circle.setColor(Color.rgb(i, 2 * i, 3 * i));
+			if (i % 3 == 0) {
+				history.undo();
+			}
+		}
+		history.redo();
+		model.removeLastCommand();
+		// Undoing points added to an older squiggle truncates it
+		SquiggleCommand first = (SquiggleCommand) model.getCommand(0);
+		first.add(1, 2);
+		first.add(3, 4);
+		history.undo();
+	}
+
+	@Test
+	public void testRecoverReplaysEdits() throws IOException {
+		File dir = Files.createTempDirectory("journal").toFile();
+		PaintJournal journal = new PaintJournal(dir);
+		journal.setCompactionThreshold(1000);
+		PaintModel model = new PaintModel();
+		PaintHistory history = new PaintHistory(model);
+		journal.attach(model);
+		draw(model, history);
+		journal.close();
+
+		PaintModel recovered = new PaintModel();
+		assertTrue(new PaintJournal(dir).recover(recovered));
+		assertEquals(describe(model), describe(recovered));
+		new PaintJournal(dir).discard();
+		assertFalse(new PaintJournal(dir).canRecover());
+	}
+
+	@Test
+	public void testTornTailIsDropped() throws IOException {
+		File dir = Files.createTempDirectory("journal").toFile();
+		PaintJournal journal = new PaintJournal(dir);
+		PaintModel model = new PaintModel();
+		journal.attach(model);
+		model.addCommand(new CircleCommand(new Point(1, 2), 3));
+		journal.flush();
+		model.addCommand(new RectangleCommand(new Point(1, 2), new Point(3, 4)));
+		journal.close();
+
+		// Cut the last batch short, as a crash while writing it would
+		File file = new File(dir, "autosave.journal");
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+
+		PaintModel recovered = new PaintModel();
+		assertFalse(new PaintJournal(dir).recover(recovered));
+		assertEquals(1, recovered.getCommandCount());
+		assertTrue(recovered.getCommand(0) instanceof CircleCommand);
+		new PaintJournal(dir).discard();
+	}
+
+	@Test
+	public void testEditsDuringCompactionAreNotInTheBase() throws IOException {
+		File dir = Files.createTempDirectory("journal").toFile();
+		PaintJournal journal = new PaintJournal(dir);
+		PaintModel model = new PaintModel();
+		PaintHistory history = new PaintHistory(model);
+		journal.attach(model);
+		draw(model, history);
+		SquiggleCommand squiggle = new SquiggleCommand();
+		model.addCommand(squiggle);
+		for (int i = 0; i < 200; i++) {
+			squiggle.add(i, i * i % 37);
+		}
+		squiggle.simplify(2);
+		RectangleCommand rectangle = new RectangleCommand(new Point(1, 2), new Point(3, 4));
+		model.addCommand(rectangle);
+		for (int i = 0; i < 5; i++) {
+			// The second base is encoded on the journal thread once the
+			// first is written and forced, well after these edits
+			journal.compact();
+			journal.compact();
+			squiggle.add(100 + i, 100);
+			squiggle.add(200 + i, 200);
+			rectangle.setP2(50 + i, 60);
+		}
+		journal.close();
+
+		PaintModel recovered = new PaintModel();
+		assertTrue(new PaintJournal(dir).recover(recovered));
+		assertEquals(describe(model), describe(recovered));
+		new PaintJournal(dir).discard();
+	}
+
+	@Test
+	public void testBaseKeepsPointsTruncatedAfterIt() throws IOException {
+		PaintModel model = new PaintModel();
+		SquiggleCommand squiggle = new SquiggleCommand();
+		model.addCommand(squiggle);
+		for (int i = 0; i < 100; i++) {
+			squiggle.add(i, i % 7);
+		}
+		String before = describe(model);
+
+		// As compact() then undoing an append, compacting again and drawing
+		// on, with the first base not yet encoded
+		PaintJournal.BaseWriter first = new PaintJournal.BaseWriter();
+		PaintBinaryFormat.save(first, model.snapshot());
+		squiggle.truncate(50);
+		PaintJournal.BaseWriter second = new PaintJournal.BaseWriter();
+		PaintBinaryFormat.save(second, model.snapshot());
+		for (int i = 0; i < 50; i++) {
+			squiggle.add(-i, -i);
+		}
+
+		PaintModel base = new PaintModel();
+		assertTrue(new PaintBinaryFormat().parse(new ByteArrayInputStream(first.toByteArray()), base));
+		assertEquals(before, describe(base));
+	}
+
+	@Test
+	public void testSecondLockUsesItsOwnDirectory() throws IOException {
+		File dir = Files.createTempDirectory("journal").toFile();
+		PaintJournal first = new PaintJournal(dir);
+		assertEquals(dir, first.lock());
+		PaintJournal second = new PaintJournal(dir);
+		File own = second.lock();
+		assertEquals(new File(dir, "instance-1"), own);
+
+		PaintModel model = new PaintModel();
+		second.attach(model);
+		model.addCommand(new CircleCommand(new Point(1, 2), 3));
+		second.close();
+		first.discard();
+		assertTrue("the first does not discard the second's journal", new PaintJournal(own).canRecover());
+
+		// Once unlocked, the directory is free again
+		PaintJournal third = new PaintJournal(dir);
+		assertEquals(dir, third.lock());
+		third.discard();
+		new PaintJournal(own).discard();
+	}
+
+	@Test
+	public void testSetAsideKeepsTheJournal() throws IOException {
+		File dir = Files.createTempDirectory("journal").toFile();
+		PaintJournal journal = new PaintJournal(dir);
+		PaintModel model = new PaintModel();
+		PaintHistory history = new PaintHistory(model);
+		journal.setCompactionThreshold(1000);
+		journal.attach(model);
+		draw(model, history);
+		journal.close();
+
+		PaintJournal declined = new PaintJournal(dir);
+		File aside = declined.setAside();
+		assertFalse(declined.canRecover());
+		declined.attach(new PaintModel());
+		declined.discard();
+
+		PaintModel recovered = new PaintModel();
+		assertTrue(new PaintJournal(aside).recover(recovered));
+		assertEquals(describe(model), describe(recovered));
+		new PaintJournal(aside).discard();
+	}
+}
@@ -0,0 +1,274 @@
+package MrKagabond.painter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Timings of the operations that make a session slow, kept for the life of
+ * the process: each Timer counts its operations and their duration, the
+ * commands and points they handled, the model notifications they fired and
+ * the bytes they read or wrote, and keeps the last SAMPLES durations for
+ * percentiles. Recording allocates nothing and can happen on any thread.
+ *
+ * Drawing is also broken down by command type, but only while detailed
+ * timing is on, as that times every command drawn.
+ *
+ * An instance holds one window's own repaint, load and save timers, which
+ * also record into the process-wide ones.
+ */
+public class PaintMetrics {
+	static final int SAMPLES = 1024;
+
+	private static final LinkedHashMap<String, Timer> timers = new LinkedHashMap<String, Timer>();
+	private static volatile boolean detailed = Boolean.getBoolean("paint.metrics.detailed");
+
+	public static final Timer REPAINT = timer("PaintPanel.repaint");
+	public static final Timer EXECUTE = timer("PaintModel.executeAll");
+	public static final Timer PARSE = timer("PaintFileParser.parse");
+	public static final Timer LOAD = timer("PaintFileOpener.open");
+	public static final Timer SAVE = timer("PaintModel.save");
+
+	// Drawing time by command type, see draw
+	private static final Timer[] DRAW = { timer("draw Circle"), timer("draw Rectangle"), timer("draw Squiggle"),
+			timer("draw Polygon"), timer("draw other") };
+
+	// This window's, see PaintMetrics()
+	private final Timer repaint, load, save;
+
+	/**
+	 * Timers for one window, each recording into the process-wide timer of
+	 * the same name as well.
+	 */
+	public PaintMetrics() {
+		this.repaint = new Timer(REPAINT.getName(), REPAINT);
+		this.load = new Timer(LOAD.getName(), LOAD);
+		this.save = new Timer(SAVE.getName(), SAVE);
+	}
+
+	public Timer getRepaint() {
+		return repaint;
+	}
+
+	public Timer getLoad() {
+		return load;
+	}
+
+	public Timer getSave() {
+		return save;
+	}
+
+	/**
+	 * Reset this window's timers, not the process-wide ones.
+	 */
+	public void reset() {
+		this.repaint.reset();
+		this.load.reset();
+		this.save.reset();
+	}
+
+	public static class Timer {
+		private final String name;
+		private final Timer parent; // also told of every operation, or null
+		private long count, totalNanos, maxNanos, lastNanos;
+		private long commands, points, notifications, bytes;
+		private long lastCommands, lastPoints, lastBytes;
+		private long[] samples = new long[SAMPLES];
+
+		Timer(String name) {
+			this(name, null);
+		}
+
+		Timer(String name, Timer parent) {
+			this.name = name;
+			this.parent = parent;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Record an operation that took nanos.
+		 */
+		public synchronized void record(long nanos, long commands, long points, long notifications, long bytes) {
+			this.samples[(int) (this.count % SAMPLES)] = nanos;
+			this.count++;
+			this.totalNanos += nanos;
+			this.maxNanos = Math.max(this.maxNanos, nanos);
+			this.lastNanos = nanos;
+			this.commands += commands;
+			this.points += points;
+			this.notifications += notifications;
+			this.bytes += bytes;
+			this.lastCommands = commands;
+			this.lastPoints = points;
+			this.lastBytes = bytes;
+			if (this.parent != null) {
+				this.parent.record(nanos, commands, points, notifications, bytes);
+			}
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public synchronized long getMaxNanos() {
+			return maxNanos;
+		}
+
+		public synchronized long getLastNanos() {
+			return lastNanos;
+		}
+
+		public synchronized long getCommands() {
+			return commands;
+		}
+
+		public synchronized long getPoints() {
+			return points;
+		}
+
+		public synchronized long getNotifications() {
+			return notifications;
+		}
+
+		public synchronized long getBytes() {
+			return bytes;
+		}
+
+		public synchronized long getLastCommands() {
+			return lastCommands;
+		}
+
+		public synchronized long getLastPoints() {
+			return lastPoints;
+		}
+
+		public synchronized long getLastBytes() {
+			return lastBytes;
+		}
+
+		/**
+		 * @return the durations of the last SAMPLES operations, or fewer, in
+		 *         ascending order
+		 */
+		public synchronized long[] getRecentNanos() {
+			long[] recent = Arrays.copyOf(this.samples, (int) Math.min(this.count, SAMPLES));
+			Arrays.sort(recent);
+			return recent;
+		}
+
+		/**
+		 * @return the fraction p of the last SAMPLES operations took at most
+		 *         this long, in nanoseconds
+		 */
+		public long getPercentile(double p) {
+			return percentile(this.getRecentNanos(), p);
+		}
+
+		public synchronized void reset() {
+			this.count = this.totalNanos = this.maxNanos = this.lastNanos = 0;
+			this.commands = this.points = this.notifications = this.bytes = 0;
+			this.lastCommands = this.lastPoints = this.lastBytes = 0;
+		}
+
+		@Override
+		public synchronized String toString() {
+			if (this.count == 0)
+				return String.format("%-24s never", this.name);
+			long[] recent = this.getRecentNanos();
+			StringBuilder sb = new StringBuilder(String.format(
+					"%-24s %8d x, mean %8.3f ms, p50 %8.3f, p99 %8.3f, max %8.3f ms; %d commands, %d points",
+					this.name, this.count, this.totalNanos / 1e6 / this.count, percentile(recent, 0.5) / 1e6,
+					percentile(recent, 0.99) / 1e6, this.maxNanos / 1e6, this.commands, this.points));
+			if (this.notifications > 0) {
+				sb.append(", ").append(this.notifications).append(" notifications");
+			}
+			if (this.bytes > 0) {
+				sb.append(String.format(", %.1f MB at %.1f MB/s", this.bytes / 1e6,
+						this.bytes * 1e3 / this.totalNanos));
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * @return the timer called name, created if there is none yet
+	 */
+	public static Timer timer(String name) {
+		synchronized (timers) {
+			Timer timer = timers.get(name);
+			if (timer == null) {
+				timer = new Timer(name);
+				timers.put(name, timer);
+			}
+			return timer;
+		}
+	}
+
+	public static List<Timer> getTimers() {
+		synchronized (timers) {
+			return new ArrayList<Timer>(timers.values());
+		}
+	}
+
+	public static boolean isDetailed() {
+		return detailed;
+	}
+
+	/**
+	 * Time drawing by command type, for every command drawn.
+	 */
+	public static void setDetailed(boolean detailed) {
+		PaintMetrics.detailed = detailed;
+	}
+
+	/**
+	 * Draw c with r, timing it by type if detailed timing is on.
+	 */
+	static void draw(PaintCommand c, PaintRenderer r) {
+		if (!detailed) {
+			c.draw(r);
+			return;
+		}
+		long start = System.nanoTime();
+		c.draw(r);
+		long nanos = System.nanoTime() - start;
+		int type = c instanceof CircleCommand ? 0
+				: c instanceof RectangleCommand ? 1
+						: c instanceof SquiggleCommand ? 2 : c instanceof PolygonCommand ? 3 : 4;
+		DRAW[type].record(nanos, 1, c.getPointCount(), 0, 0);
+	}
+
+	static long percentile(long[] sorted, double p) {
+		if (sorted.length == 0)
+			return 0;
+		int i = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+	}
+
+	/**
+	 * @return every timer, one per line, with the JVM and a header, as text
+	 *         to attach to a bug report
+	 */
+	public static String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Paint performance report\n");
+		sb.append(String.format("java %s (%s), %s %s, %d cpus, %d MB max heap\n", System.getProperty("java.version"),
+				System.getProperty("java.vm.name"), System.getProperty("os.name"), System.getProperty("os.arch"),
+				Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() >> 20));
+		if (!detailed) {
+			sb.append("(detailed timing off: no draw times by command type)\n");
+		}
+		for (Timer timer : getTimers()) {
+			sb.append(timer).append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -1,85 +1,369 @@
-package MrKagabond.painter;
-
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.Observable;
-import java.util.Observer;
-
-import javafx.scene.canvas.GraphicsContext;
-
-public class PaintModel extends Observable implements Observer {
-
-	CircleCommand CIRCLE = new CircleCommand(null, 0);
-	PolygonCommand POLYGON = new PolygonCommand();
-	RectangleCommand RECTANGLE = new RectangleCommand(null, null);
-	SquiggleCommand SQUIGGLE = new SquiggleCommand();
-
-	public void save(PrintWriter writer) {
-		writer.print("PaintSaveFileVersion1.0\n");
-		for (PaintCommand c : this.commands) {
-			if (c.getClass().isInstance(CIRCLE)) {
-				writer.print("Circle\n");
-				writer.print(c.displayGeneralDetails());
-				writer.print("\tcenter:" + ((CircleCommand) c).getCentre() + "\n");
-				writer.print("\tradius:" + ((CircleCommand) c).getRadius() + "\n");
-				writer.print("End Circle\n");
-			} else if (c.getClass().isInstance(POLYGON)) {
-				writer.print("Polygon\n");
-				writer.print(c.displayGeneralDetails());
-				writer.print("\tpoints:\n");
-				for (Point p : ((PolygonCommand) c).getPoints()) {
-					writer.print("\t\tpoint: " + p.toString() + "\n");
-				}
-				writer.print("\tend points\n");
-				writer.print("End Polygon\n");
-			} else if (c.getClass().isInstance(RECTANGLE)) {
-				writer.print("Rectangle\n");
-				writer.print(c.displayGeneralDetails());
-				writer.print("\tp1:" + ((RectangleCommand) c).getP1() + "\n");
-				writer.print("\tp2:" + ((RectangleCommand) c).getP2() + "\n");
-				writer.print("End Rectangle\n");
-			} else if (c.getClass().isInstance(SQUIGGLE)) {
-				writer.print("Squiggle\n");
-				writer.print(c.displayGeneralDetails());
-				writer.print("\tpoints\n");
-				for (Point p : ((SquiggleCommand) c).getPoints()) {
-					writer.print("\t\tpoint:" + p.toString() + "\n");
-				}
-				writer.print("\tend points\n");
-				writer.print("End Squiggle\n");
-			}
-		}
-		writer.print("EndPaintSaveFile\n");
-		writer.close();
-	}
-
-	public void reset() {
-		for (PaintCommand c : this.commands) {
-			c.deleteObserver(this);
-		}
-		this.commands.clear();
-		this.setChanged();
-		this.notifyObservers();
-	}
-
-	public void addCommand(PaintCommand command) {
-		this.commands.add(command);
-		command.addObserver(this);
-		this.setChanged();
-		this.notifyObservers();
-	}
-
-	private ArrayList<PaintCommand> commands = new ArrayList<PaintCommand>();
-
-	public void executeAll(GraphicsContext g) {
-		for (PaintCommand c : this.commands) {
-			c.execute(g);
-		}
-	}
-
-	@Override
-	public void update(Observable o, Object arg) {
-		this.setChanged();
-		this.notifyObservers();
-	}
-}
+package MrKagabond.painter;
+
+import java.awt.Graphics2D;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javafx.scene.canvas.GraphicsContext;
+
+public class PaintModel {
+
+	/**
+	 * Write the drawing as it is now. Saving works on a snapshot, so it may
+	 * run on another thread while editing goes on.
+	 */
+	public void save(PrintWriter writer) {
+		save(writer, this.snapshot());
+	}
+
+	/**
+	 * Write commands, such as an earlier snapshot, in the text format.
+	 */
+	public static void save(PrintWriter writer, List<PaintCommand> commands) {
+		long start = System.nanoTime();
+		try {
+			PaintFileWriter.save(writer, commands);
+		} catch (IOException e) {
+			// PrintWriter does not throw, see checkError()
+		}
+		writer.close();
+		PaintMetrics.SAVE.record(System.nanoTime() - start, commands.size(), countPoints(commands), 0, 0);
+	}
+
+	static long countPoints(List<PaintCommand> commands) {
+		long points = 0;
+		for (int i = 0; i < commands.size(); i++) {
+			points += commands.get(i).getPointCount();
+		}
+		return points;
+	}
+
+	public void reset() {
+		CommandVector removed = this.commands;
+		for (PaintCommand c : removed) {
+			c.model = null;
+			c.indexedBounds.clear();
+		}
+		this.commands = CommandVector.EMPTY;
+		this.index.clear();
+		this.event.clear(PaintModelEvent.Type.MODEL_RESET);
+		this.event.resetFrom(removed);
+		this.publish(this.event);
+		if (this.batchDepth > 0) {
+			this.batch.reset();
+		}
+	}
+
+	public void addCommand(PaintCommand command) {
+		command.z = this.commands.size();
+		command.model = this;
+		this.commands = this.commands.plus(command);
+		this.reindex(command);
+		this.event.clear(PaintModelEvent.Type.COMMAND_ADDED);
+		this.event.added(command);
+		this.publish(this.event);
+		if (this.batchDepth > 0) {
+			this.batch.added(command);
+		}
+	}
+
+	/**
+	 * Remove the last command, the inverse of addCommand.
+	 * 
+	 * @return the command removed, or null if there are none
+	 */
+	public PaintCommand removeLastCommand() {
+		if (this.commands.isEmpty())
+			return null;
+		PaintCommand command = this.commands.get(this.commands.size() - 1);
+		this.commands = this.commands.pop();
+		command.model = null;
+		this.index.remove(command);
+		this.event.clear(PaintModelEvent.Type.COMMAND_REMOVED);
+		this.event.removed(command);
+		this.publish(this.event);
+		if (this.batchDepth > 0) {
+			this.batch.removed(command);
+		}
+		return command;
+	}
+
+	/**
+	 * Add a batch of commands, in order, with a single BATCH event at the
+	 * end. Use this when loading a drawing: the spatial index is grown at most
+	 * once, and listeners repaint once rather than once per shape.
+	 */
+	public void addCommands(List<? extends PaintCommand> commands) {
+		if (commands.isEmpty())
+			return;
+		Rect extent = new Rect();
+		for (PaintCommand c : commands) {
+			extent.add(c.getBounds());
+		}
+		boolean covered = this.index.covers(extent);
+		boolean record = this.recorders.length > 0;
+		this.beginBatch();
+		int z = this.commands.size();
+		this.commands = this.commands.plusAll(commands);
+		for (PaintCommand c : commands) {
+			c.z = z++;
+			c.model = this;
+			if (covered) {
+				this.index.update(c);
+			}
+			if (record) {
+				this.event.clear(PaintModelEvent.Type.COMMAND_ADDED);
+				this.event.added(c);
+				this.fire(this.recorders, this.event);
+			}
+			this.batch.added(c);
+		}
+		if (!covered) {
+			this.index.rebuild(this.commands, extent);
+		}
+		this.endBatch();
+	}
+
+	/**
+	 * Called by a command of this model after it changed, with its old state
+	 * still in its old* fields.
+	 */
+	void commandMutated(PaintCommand command, PaintModelEvent.Delta delta) {
+		this.reindex(command);
+		this.event.clear(PaintModelEvent.Type.COMMAND_MUTATED);
+		this.event.mutated(command, delta);
+		this.publish(this.event);
+		if (this.batchDepth > 0) {
+			this.batch.mutated(command, delta);
+		}
+	}
+
+	/**
+	 * Start collecting changes into a batch. Until the matching endBatch(),
+	 * listeners hear nothing; then they get a single BATCH event. Batches
+	 * nest, only the outermost endBatch() fires.
+	 */
+	public void beginBatch() {
+		if (this.batchDepth++ == 0) {
+			this.batch.clear(PaintModelEvent.Type.BATCH);
+		}
+	}
+
+	public void endBatch() {
+		if (--this.batchDepth == 0 && !this.batch.isEmpty()) {
+			this.fire(this.listeners, this.batch);
+		}
+	}
+
+	private static final PaintModelListener[] NO_LISTENERS = new PaintModelListener[0];
+
+	// Replaced, never modified, so firing needs no copy
+	private PaintModelListener[] listeners = NO_LISTENERS;
+	private PaintModelListener[] recorders = NO_LISTENERS;
+	private PaintModelEvent event = new PaintModelEvent(this);
+	private PaintModelEvent batch = new PaintModelEvent(this);
+	private int batchDepth = 0;
+
+	public void addListener(PaintModelListener listener) {
+		this.listeners = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+		this.listeners[this.listeners.length - 1] = listener;
+	}
+
+	public void removeListener(PaintModelListener listener) {
+		this.listeners = without(this.listeners, listener);
+	}
+
+	/**
+	 * Add a listener that hears about every single change as it happens,
+	 * inside batches too, before ordinary listeners do. For undo history and
+	 * journals, which need each change rather than a summary.
+	 */
+	public void addRecorder(PaintModelListener recorder) {
+		this.recorders = Arrays.copyOf(this.recorders, this.recorders.length + 1);
+		this.recorders[this.recorders.length - 1] = recorder;
+	}
+
+	public void removeRecorder(PaintModelListener recorder) {
+		this.recorders = without(this.recorders, recorder);
+	}
+
+	private static PaintModelListener[] without(PaintModelListener[] array, PaintModelListener listener) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == listener) {
+				PaintModelListener[] copy = new PaintModelListener[array.length - 1];
+				System.arraycopy(array, 0, copy, 0, i);
+				System.arraycopy(array, i + 1, copy, i, copy.length - i);
+				return copy;
+			}
+		}
+		return array;
+	}
+
+	/**
+	 * Hand a single change to the recorders, and to the listeners unless a
+	 * batch is collecting it.
+	 */
+	private void publish(PaintModelEvent event) {
+		this.fire(this.recorders, event);
+		if (this.batchDepth == 0) {
+			this.fire(this.listeners, event);
+		}
+		event.release();
+	}
+
+	private void fire(PaintModelListener[] listeners, PaintModelEvent event) {
+		this.notificationCount += listeners.length;
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].modelChanged(event);
+		}
+	}
+
+	// For PaintMetrics
+	private long notificationCount = 0, drawnCommands = 0, drawnPoints = 0;
+
+	/**
+	 * @return how many times a listener or recorder has been notified
+	 */
+	public long getNotificationCount() {
+		return notificationCount;
+	}
+
+	/**
+	 * @return the commands drawn by executeRange and executeIntersecting
+	 */
+	long getDrawnCommands() {
+		return drawnCommands;
+	}
+
+	/**
+	 * @return the points in the commands drawn by executeRange and
+	 *         executeIntersecting
+	 */
+	long getDrawnPoints() {
+		return drawnPoints;
+	}
+
+	/**
+	 * @return the points in all commands, see PaintCommand.getPointCount
+	 */
+	public long getPointCount() {
+		return countPoints(this.snapshot());
+	}
+
+	// Replaced, never modified, on every add and remove. Readers on other
+	// threads see some complete version of the list.
+	private volatile CommandVector commands = CommandVector.EMPTY;
+	private SpatialIndex index = new SpatialIndex(1024, 1024);
+	private ArrayList<PaintCommand> queryResult = new ArrayList<PaintCommand>();
+
+	private void reindex(PaintCommand command) {
+		if (this.index.covers(command.getBounds())) {
+			this.index.update(command);
+		} else {
+			this.index.rebuild(this.commands, command.getBounds());
+		}
+	}
+
+	/**
+	 * @return the commands whose bounds intersect r, in drawing order
+	 */
+	public List<PaintCommand> getCommandsIntersecting(Rect r) {
+		ArrayList<PaintCommand> result = new ArrayList<PaintCommand>();
+		this.index.query(r, result);
+		return result;
+	}
+
+	/**
+	 * @return the topmost command drawn at (x,y), or null if there is none
+	 */
+	public PaintCommand getTopmostCommandAt(int x, int y) {
+		return this.index.topmostAt(x, y);
+	}
+
+	/**
+	 * @return the commands in drawing order, as they are now. The list never
+	 *         changes, however the model is edited afterwards, and taking it
+	 *         costs nothing, so it is safe to hand to another thread. The
+	 *         commands themselves are shared: one still being drawn may change.
+	 */
+	public List<PaintCommand> snapshot() {
+		return this.commands;
+	}
+
+	public int getCommandCount() {
+		return this.commands.size();
+	}
+
+	public PaintCommand getCommand(int i) {
+		return this.commands.get(i);
+	}
+
+	public PaintCommand getLastCommand() {
+		CommandVector commands = this.commands;
+		if (commands.isEmpty())
+			return null;
+		return commands.get(commands.size() - 1);
+	}
+
+	public void executeAll(PaintRenderer r) {
+		long start = System.nanoTime(), notifications = this.notificationCount;
+		List<PaintCommand> commands = this.snapshot();
+		long points = 0;
+		for (int i = 0; i < commands.size(); i++) {
+			PaintCommand c = commands.get(i);
+			PaintMetrics.draw(c, r);
+			points += c.getPointCount();
+		}
+		PaintMetrics.EXECUTE.record(System.nanoTime() - start, commands.size(), points,
+				this.notificationCount - notifications, 0);
+	}
+
+	public void executeAll(GraphicsContext g) {
+		this.executeAll(new FxPaintRenderer(g));
+	}
+
+	public void executeAll(Graphics2D g) {
+		this.executeAll(new Java2DPaintRenderer(g));
+	}
+
+	/**
+	 * Execute the commands with index in [from, to), in drawing order.
+	 */
+	public void executeRange(PaintRenderer r, int from, int to) {
+		List<PaintCommand> commands = this.snapshot();
+		for (int i = from; i < to; i++) {
+			PaintCommand c = commands.get(i);
+			PaintMetrics.draw(c, r);
+			this.drawnCommands++;
+			this.drawnPoints += c.getPointCount();
+		}
+	}
+
+	public void executeRange(GraphicsContext g, int from, int to) {
+		this.executeRange(new FxPaintRenderer(g), from, to);
+	}
+
+	/**
+	 * Execute, in drawing order, the commands with index below to whose bounds
+	 * intersect area.
+	 */
+	public void executeIntersecting(PaintRenderer r, Rect area, int to) {
+		this.queryResult.clear();
+		this.index.query(area, this.queryResult);
+		for (PaintCommand c : this.queryResult) {
+			if (c.z >= to)
+				break;
+			PaintMetrics.draw(c, r);
+			this.drawnCommands++;
+			this.drawnPoints += c.getPointCount();
+		}
+		this.queryResult.clear();
+	}
+
+	public void executeIntersecting(GraphicsContext g, Rect area, int to) {
+		this.executeIntersecting(new FxPaintRenderer(g), area, to);
+	}
+}
@@ -0,0 +1,245 @@
+package MrKagabond.painter;
+
+import java.util.List;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Describes a change to a PaintModel. A single change is one of
+ * COMMAND_ADDED, COMMAND_MUTATED, COMMAND_REMOVED or MODEL_RESET; changes made
+ * between PaintModel.beginBatch() and endBatch() are summarized by one BATCH
+ * event. Recorders get every single change, batched or not.
+ * 
+ * The model reuses its event objects, so listeners must copy anything they
+ * want to keep after modelChanged returns.
+ */
+public class PaintModelEvent {
+
+	public enum Type {
+		COMMAND_ADDED, COMMAND_MUTATED, COMMAND_REMOVED, MODEL_RESET, BATCH
+	}
+
+	/**
+	 * Which part of a command a COMMAND_MUTATED event changed.
+	 */
+	public enum Delta {
+		POINT_APPENDED, POINT_REMOVED, POINTS_REPLACED, CENTRE, RADIUS, P1, P2, STYLE, POINTS_TRUNCATED
+	}
+
+	private PaintModel model;
+	private Type type;
+	private PaintCommand command;
+	private Delta delta;
+	Rect oldBounds = new Rect(), newBounds = new Rect();
+
+	// The value a COMMAND_MUTATED change replaced, see the getters
+	private int oldX, oldY;
+	private int[] oldPoints;
+	private Color oldColor;
+	private boolean oldFill;
+	private List<PaintCommand> resetCommands;
+
+	// The summary every event carries, so listeners can treat single changes
+	// and batches alike
+	private boolean reset;
+	private int firstAdded, addedCount, mutationCount, removedCount;
+	Rect damage = new Rect(); // old and new bounds of mutated, not newly added, commands, and removed ones
+
+	PaintModelEvent(PaintModel model) {
+		this.model = model;
+		this.clear(Type.BATCH);
+	}
+
+	void clear(Type type) {
+		this.type = type;
+		this.command = null;
+		this.delta = null;
+		this.oldBounds.clear();
+		this.newBounds.clear();
+		this.oldPoints = null;
+		this.oldColor = null;
+		this.resetCommands = null;
+		this.reset = type == Type.MODEL_RESET;
+		this.firstAdded = -1;
+		this.addedCount = 0;
+		this.mutationCount = 0;
+		this.removedCount = 0;
+		this.damage.clear();
+	}
+
+	boolean isEmpty() {
+		return !this.reset && this.addedCount == 0 && this.mutationCount == 0 && this.removedCount == 0;
+	}
+
+	void added(PaintCommand command) {
+		if (this.type == Type.COMMAND_ADDED) {
+			this.command = command;
+		}
+		if (this.firstAdded < 0) {
+			this.firstAdded = command.z;
+		}
+		this.addedCount++;
+	}
+
+	void mutated(PaintCommand command, Delta delta) {
+		if (this.type == Type.COMMAND_MUTATED) {
+			this.command = command;
+			this.delta = delta;
+			this.oldBounds.set(command.oldBounds);
+			this.newBounds.set(command.getBounds());
+			this.oldX = command.oldX;
+			this.oldY = command.oldY;
+			this.oldPoints = command.oldPoints;
+			this.oldColor = command.oldColor;
+			this.oldFill = command.oldFill;
+		}
+		this.mutationCount++;
+		// Commands added in this batch get drawn in full anyway
+		if (this.firstAdded < 0 || command.z < this.firstAdded) {
+			this.damage.add(command.oldBounds);
+			this.damage.add(command.getBounds());
+		}
+	}
+
+	void removed(PaintCommand command) {
+		if (this.type == Type.COMMAND_REMOVED) {
+			this.command = command;
+		}
+		this.removedCount++;
+		this.damage.add(command.getBounds());
+	}
+
+	void resetFrom(List<PaintCommand> commands) {
+		this.resetCommands = commands;
+	}
+
+	/**
+	 * Let go of the points and commands a change replaced, once everyone has
+	 * heard of it.
+	 */
+	void release() {
+		this.oldPoints = null;
+		this.resetCommands = null;
+	}
+
+	void reset() {
+		this.clear(this.type);
+		this.reset = true;
+	}
+
+	public PaintModel getModel() {
+		return model;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the command added, mutated or removed, null for MODEL_RESET and
+	 *         BATCH
+	 */
+	public PaintCommand getCommand() {
+		return command;
+	}
+
+	/**
+	 * @return what changed for COMMAND_MUTATED, otherwise null
+	 */
+	public Delta getDelta() {
+		return delta;
+	}
+
+	/**
+	 * @return the bounds of the command before a COMMAND_MUTATED change
+	 */
+	public Rect getOldBounds() {
+		return oldBounds;
+	}
+
+	/**
+	 * @return the bounds of the command after a COMMAND_MUTATED change
+	 */
+	public Rect getNewBounds() {
+		return newBounds;
+	}
+
+	/**
+	 * @return the old radius for RADIUS, the old x of the point for CENTRE, P1,
+	 *         P2 and POINT_REMOVED
+	 */
+	public int getOldX() {
+		return oldX;
+	}
+
+	/**
+	 * @return the old y of the point for CENTRE, P1, P2 and POINT_REMOVED
+	 */
+	public int getOldY() {
+		return oldY;
+	}
+
+	/**
+	 * @return the interleaved x,y points before POINTS_REPLACED, or the
+	 *         points POINTS_TRUNCATED took off the end
+	 */
+	public int[] getOldPoints() {
+		return oldPoints;
+	}
+
+	/**
+	 * @return the colour before a COMMAND_MUTATED change
+	 */
+	public Color getOldColor() {
+		return oldColor;
+	}
+
+	/**
+	 * @return the fill before a COMMAND_MUTATED change
+	 */
+	public boolean isOldFill() {
+		return oldFill;
+	}
+
+	/**
+	 * @return the commands a MODEL_RESET removed, in drawing order. The model
+	 *         no longer uses the list, so it may be kept.
+	 */
+	public List<PaintCommand> getResetCommands() {
+		return resetCommands;
+	}
+
+	/**
+	 * @return whether the model was reset, for a BATCH somewhere in it
+	 */
+	public boolean isReset() {
+		return reset;
+	}
+
+	/**
+	 * @return the index of the first command added, or -1 if none were
+	 */
+	public int getFirstAdded() {
+		return firstAdded;
+	}
+
+	public int getAddedCount() {
+		return addedCount;
+	}
+
+	public int getMutationCount() {
+		return mutationCount;
+	}
+
+	public int getRemovedCount() {
+		return removedCount;
+	}
+
+	/**
+	 * @return the area covered by mutated commands before and after the
+	 *         change, leaving out commands added in the same batch
+	 */
+	public Rect getDamage() {
+		return damage;
+	}
+}
@@ -0,0 +1,8 @@
+package MrKagabond.painter;
+
+/**
+ * Receives the changes made to a PaintModel, see PaintModelEvent.
+ */
+public interface PaintModelListener {
+	void modelChanged(PaintModelEvent event);
+}
@@ -1,58 +1,313 @@
-package MrKagabond.painter;
-
-import java.util.Observable;
-import java.util.Observer;
-
-import javafx.event.EventHandler;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.input.MouseEvent;
-import javafx.scene.layout.StackPane;
-
-class PaintPanel extends StackPane implements Observer, EventHandler<MouseEvent> {
-
-	private PaintModel model; 
-	private Canvas canvas;
-	private ShapeManipulatorStrategy strategy;
-	
-	public PaintPanel(PaintModel model) {
-
-		this.canvas = new Canvas(500, 500);
-		this.getChildren().add(this.canvas);
-		this.setStyle("-fx-background-color: white");
-		this.canvas.addEventHandler(MouseEvent.ANY, this);
-		this.setPaintModel(model);
-		
-	}
-
-	public void setPaintModel(PaintModel model) {
-		if(model==null)return;
-		if(this.model!=null) {
-			this.model.deleteObserver(this);
-		}
-		this.model = model;
-		this.setShapeManipulatorStrategy(new ShapeManipulatorStrategy(this.model)); // set to the empty strategy
-		this.model.addObserver(this);
-		this.repaint();
-	}
-	
-	public void repaint() {
-		GraphicsContext g = this.canvas.getGraphicsContext2D();
-		g.clearRect(0, 0, this.getWidth(), this.getHeight());
-		this.model.executeAll(g);
-	}
-
-	@Override
-	public void update(Observable o, Object arg) {
-		this.repaint();
-	}
-
-	@Override
-	public void handle(MouseEvent event) {
-		this.strategy.handle(event);
-	}
-	public void setShapeManipulatorStrategy(ShapeManipulatorStrategy strategy) {
-		this.strategy = strategy;
-	}
-}
-
+package MrKagabond.painter;
+
+import java.util.ArrayList;
+
+import javafx.animation.AnimationTimer;
+import javafx.event.EventHandler;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.StackPane;
+
+class PaintPanel extends StackPane implements PaintModelListener, EventHandler<MouseEvent> {
+
+	/**
+	 * How the committed layer is rebuilt from scratch: DIRECT replays the
+	 * commands on the FX thread, TILED rasterizes tiles in parallel.
+	 */
+	public enum RenderMode {
+		DIRECT, TILED
+	}
+
+	// Strokes and antialiasing bleed a little past a command's bounds
+	private static final int DAMAGE_MARGIN = 2;
+
+	private PaintModel model;
+	private ShapeManipulatorStrategy strategy;
+
+	// Finished commands are cached on the bottom layer, the command being
+	// drawn (always the last one in the model) lives alone on the top layer.
+	private Canvas committedLayer;
+	private Canvas liveLayer;
+	private FxPaintRenderer committedRenderer, liveRenderer;
+	private int committedCount = 0; // commands [0, committedCount) are on committedLayer
+	private boolean committedValid = false;
+	private Rect liveDrawn = new Rect(); // what is currently on liveLayer
+	private RenderMode renderMode = RenderMode.DIRECT;
+	private TileRasterizer tileRasterizer = new TileRasterizer();
+
+	// Events only mark the panel dirty, the timer renders at most
+	// once per pulse and then stops itself until the next change.
+	private boolean dirty = false;
+	private Rect committedDamage = new Rect();
+	private Rect clipRect = new Rect();
+	private long notificationCount = 0, coalescedCount = 0, frameCount = 0;
+	private ArrayList<Runnable> frameListeners = new ArrayList<Runnable>();
+	private MouseTrace recording = null;
+	private PerfOverlay overlay;
+	private PaintMetrics metrics = new PaintMetrics();
+	private AnimationTimer repaintTimer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			PaintPanel.this.paintFrame();
+		}
+	};
+
+	public PaintPanel(PaintModel model) {
+
+		this.committedLayer = new Canvas(500, 500);
+		this.liveLayer = new Canvas(500, 500);
+		this.committedRenderer = new FxPaintRenderer(this.committedLayer.getGraphicsContext2D());
+		this.liveRenderer = new FxPaintRenderer(this.liveLayer.getGraphicsContext2D());
+		this.overlay = new PerfOverlay(this);
+		this.getChildren().addAll(this.committedLayer, this.liveLayer, this.overlay);
+		this.setStyle("-fx-background-color: white");
+		this.liveLayer.addEventHandler(MouseEvent.ANY, this);
+		this.setPaintModel(model);
+
+	}
+
+	/**
+	 * @return the timers of this panel, and of the files opened and saved
+	 *         into it
+	 */
+	public PaintMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	public PaintModel getPaintModel() {
+		return this.model;
+	}
+
+	public void setPaintModel(PaintModel model) {
+		if(model==null)return;
+		if(this.model!=null) {
+			this.model.removeListener(this);
+		}
+		this.model = model;
+		this.setShapeManipulatorStrategy(new ShapeManipulatorStrategy(this.model)); // set to the empty strategy
+		this.model.addListener(this);
+		this.invalidate();
+		this.requestRepaint();
+	}
+
+	/**
+	 * Throw away the committed layer, the next repaint replays every command.
+	 */
+	public void invalidate() {
+		this.committedValid = false;
+	}
+
+	public RenderMode getRenderMode() {
+		return renderMode;
+	}
+
+	public void setRenderMode(RenderMode renderMode) {
+		this.renderMode = renderMode;
+		this.invalidate();
+		this.requestRepaint();
+	}
+
+	/**
+	 * Schedule a repaint for the next pulse. Requests made while one is
+	 * already pending are coalesced into it.
+	 */
+	public void requestRepaint() {
+		if (this.dirty) {
+			this.coalescedCount++;
+			return;
+		}
+		this.dirty = true;
+		this.repaintTimer.start();
+	}
+
+	private void paintFrame() {
+		this.repaintTimer.stop();
+		if (!this.dirty)
+			return;
+		this.dirty = false;
+		this.frameCount++;
+		long start = System.nanoTime();
+		long drawnCommands = this.model.getDrawnCommands(), drawnPoints = this.model.getDrawnPoints();
+		long notifications = this.model.getNotificationCount();
+		int live = this.model.getCommandCount() - 1;
+		if (this.committedValid && this.committedCount > Math.max(live, 0)) {
+			// Commands were removed: the one now live, and any others still
+			// cached, come off the committed layer by redrawing their area
+			for (int i = Math.max(live, 0); i < Math.min(this.committedCount, live + 1); i++) {
+				this.committedDamage.add(this.model.getCommand(i).getBounds());
+			}
+			this.committedCount = Math.max(live, 0);
+		}
+		if (this.committedValid) {
+			this.repaintCommitted(this.committedDamage);
+		}
+		this.committedDamage.clear();
+		this.repaint();
+		PaintCommand last = this.model.getLastCommand();
+		this.metrics.getRepaint().record(System.nanoTime() - start,
+				this.model.getDrawnCommands() - drawnCommands + (last != null ? 1 : 0),
+				this.model.getDrawnPoints() - drawnPoints + (last != null ? last.getPointCount() : 0),
+				this.model.getNotificationCount() - notifications, 0);
+		for (int i = 0; i < this.frameListeners.size(); i++) {
+			this.frameListeners.get(i).run();
+		}
+	}
+
+	/**
+	 * Bring both layers up to date with the model right away.
+	 */
+	public void repaint() {
+		int live = this.model.getCommandCount() - 1;
+
+		GraphicsContext g = this.committedLayer.getGraphicsContext2D();
+		if (!this.committedValid || this.committedCount > Math.max(live, 0)) {
+			g.clearRect(0, 0, this.committedLayer.getWidth(), this.committedLayer.getHeight());
+			this.liveLayer.getGraphicsContext2D().clearRect(0, 0, this.liveLayer.getWidth(),
+					this.liveLayer.getHeight());
+			this.liveDrawn.clear();
+			this.committedCount = 0;
+			this.committedValid = true;
+			if (this.renderMode == RenderMode.TILED && live > 0) {
+				this.tileRasterizer.render(this.model, live, g.getPixelWriter(), (int) this.committedLayer.getWidth(),
+						(int) this.committedLayer.getHeight());
+				this.committedCount = live;
+			}
+		}
+		if (this.committedCount < live) {
+			// Commands finished since the last repaint are appended to the cache
+			this.model.executeRange(this.committedRenderer, this.committedCount, live);
+			this.committedCount = live;
+		}
+
+		g = this.liveLayer.getGraphicsContext2D();
+		this.clear(g, this.liveDrawn);
+		this.liveDrawn.clear();
+		if (live >= 0) {
+			PaintCommand c = this.model.getLastCommand();
+			PaintMetrics.draw(c, this.liveRenderer);
+			this.liveDrawn.set(c.getBounds());
+		}
+	}
+
+	/**
+	 * Redraw the part of the committed layer covered by damage.
+	 */
+	private void repaintCommitted(Rect damage) {
+		if (damage.isEmpty())
+			return;
+		GraphicsContext g = this.committedLayer.getGraphicsContext2D();
+		Rect r = this.clipRect;
+		r.set(damage.minX - DAMAGE_MARGIN, damage.minY - DAMAGE_MARGIN, damage.maxX + DAMAGE_MARGIN,
+				damage.maxY + DAMAGE_MARGIN);
+		g.save();
+		g.beginPath();
+		g.rect(r.minX, r.minY, r.getWidth() + 1, r.getHeight() + 1);
+		g.clip();
+		g.clearRect(r.minX, r.minY, r.getWidth() + 1, r.getHeight() + 1);
+		this.model.executeIntersecting(this.committedRenderer, r, this.committedCount);
+		g.restore();
+	}
+
+	private void clear(GraphicsContext g, Rect r) {
+		if (r.isEmpty())
+			return;
+		g.clearRect(r.minX - DAMAGE_MARGIN, r.minY - DAMAGE_MARGIN, r.getWidth() + 2 * DAMAGE_MARGIN + 1,
+				r.getHeight() + 2 * DAMAGE_MARGIN + 1);
+	}
+
+	@Override
+	public void modelChanged(PaintModelEvent event) {
+		this.notificationCount++;
+		if (event.isReset()) {
+			this.invalidate();
+		}
+		if (event.getType() == PaintModelEvent.Type.COMMAND_MUTATED) {
+			if (event.getCommand() != this.model.getLastCommand()) {
+				// A finished command changed, only its old and new area is stale
+				this.committedDamage.add(event.getDamage());
+			}
+		} else {
+			// Added commands are picked up by repaint(), the live command is
+			// always redrawn in full
+			this.committedDamage.add(event.getDamage());
+		}
+		this.requestRepaint();
+	}
+
+	public long getNotificationCount() {
+		return notificationCount;
+	}
+
+	/**
+	 * @return how many notifications were folded into an already pending
+	 *         repaint
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	public boolean isOverlayVisible() {
+		return this.overlay.isVisible();
+	}
+
+	/**
+	 * Show frame rate, frame times and model size over the drawing, timing
+	 * drawing by command type meanwhile, see PaintMetrics.
+	 */
+	public void setOverlayVisible(boolean visible) {
+		this.overlay.setShowing(visible);
+	}
+
+	/**
+	 * Run listener after each frame is drawn.
+	 */
+	public void addFrameListener(Runnable listener) {
+		this.frameListeners.add(listener);
+	}
+
+	public void removeFrameListener(Runnable listener) {
+		this.frameListeners.remove(listener);
+	}
+
+	/**
+	 * Record the mouse events reaching this, and shape changes, until
+	 * stopRecording.
+	 */
+	public void startRecording() {
+		this.recording = new MouseTrace();
+		this.recording.recordShape(this.strategy);
+	}
+
+	/**
+	 * @return what was recorded since startRecording, or null if nothing was
+	 *         being recorded
+	 */
+	public MouseTrace stopRecording() {
+		MouseTrace trace = this.recording;
+		this.recording = null;
+		return trace;
+	}
+
+	@Override
+	public void handle(MouseEvent event) {
+		if (this.recording != null) {
+			this.recording.record(event);
+		}
+		this.strategy.handle(event);
+	}
+	public void setShapeManipulatorStrategy(ShapeManipulatorStrategy strategy) {
+		this.strategy = strategy;
+		if (this.recording != null) {
+			this.recording.recordShape(strategy);
+		}
+	}
+
+	public ShapeManipulatorStrategy getShapeManipulatorStrategy() {
+		return this.strategy;
+	}
+}
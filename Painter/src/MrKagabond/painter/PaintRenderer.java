@@ -0,0 +1,34 @@
+package MrKagabond.painter;
+
+import javafx.scene.paint.Color;
+
+/**
+ * What a PaintCommand draws with, see PaintCommand.draw. Coordinates are in
+ * pixels, rectangles and ovals are given by their bounding box, and strokes
+ * are one pixel wide, as on a default JavaFX canvas.
+ *
+ * FxPaintRenderer draws on a JavaFX canvas, Java2DPaintRenderer on a
+ * BufferedImage or any Graphics2D without the FX toolkit, and
+ * CountingPaintRenderer only counts the calls.
+ */
+public interface PaintRenderer {
+
+	/**
+	 * Use color for the fills and strokes that follow.
+	 */
+	void setColor(Color color);
+
+	void fillRect(int x, int y, int width, int height);
+
+	void strokeRect(int x, int y, int width, int height);
+
+	void fillOval(int x, int y, int width, int height);
+
+	void strokeOval(int x, int y, int width, int height);
+
+	/**
+	 * Stroke lines joining the points in order. Fewer than two points draw
+	 * nothing.
+	 */
+	void strokePolyline(PointBuffer points);
+}
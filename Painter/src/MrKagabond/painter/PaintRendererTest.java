@@ -0,0 +1,57 @@
+package MrKagabond.painter;
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import javafx.scene.paint.Color;
+
+public class PaintRendererTest {
+
+	private static PaintModel drawing() {
+		PaintModel model = new PaintModel();
+		CircleCommand circle = new CircleCommand(new Point(20, 20), 10);
+		circle.setFill(true);
+		model.addCommand(circle);
+		RectangleCommand rectangle = new RectangleCommand(new Point(40, 10), new Point(60, 30));
+		rectangle.setFill(false);
+		model.addCommand(rectangle);
+		SquiggleCommand squiggle = new SquiggleCommand();
+		squiggle.setColor(Color.BLACK);
+		squiggle.add(10, 50);
+		squiggle.add(50, 50);
+		squiggle.add(50, 60);
+		model.addCommand(squiggle);
+		model.addCommand(new SquiggleCommand()); // draws nothing
+		return model;
+	}
+
+	@Test
+	public void testCounts() {
+		CountingPaintRenderer r = new CountingPaintRenderer();
+		drawing().executeAll(r);
+		assertEquals(4, r.getColorChanges());
+		assertEquals(1, r.getFills());
+		assertEquals(1, r.getStrokes());
+		assertEquals(1, r.getPolylines());
+		assertEquals(3, r.getPoints());
+		assertEquals(3, r.getDrawCalls());
+	}
+
+	@Test
+	public void testHeadlessImage() {
+		PaintModel model = drawing();
+		model.getCommand(0).setColor(Color.RED);
+		BufferedImage image = new BufferedImage(80, 80, BufferedImage.TYPE_INT_ARGB);
+		Java2DPaintRenderer r = new Java2DPaintRenderer(image);
+		model.executeAll(r);
+		r.dispose();
+
+		assertEquals(0xffff0000, image.getRGB(20, 20)); // inside the filled circle
+		assertTrue(image.getRGB(30, 50) >>> 24 > 0); // on the antialiased squiggle
+		assertEquals(0, image.getRGB(30, 50) & 0xffffff);
+		assertEquals(0, image.getRGB(50, 20) >>> 24); // inside the stroked rectangle
+		assertEquals(0, image.getRGB(75, 75) >>> 24);
+	}
+}
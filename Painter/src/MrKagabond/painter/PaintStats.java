@@ -0,0 +1,245 @@
+package MrKagabond.painter;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import javafx.application.Platform;
+
+/**
+ * A PaintPanel, the drawing it shows and its journal, if any, as an MBean
+ * named MrKagabond.painter:type=PaintStats,window=n, for JMX consoles and
+ * monitoring to poll.
+ *
+ * Command counts, points and bytes are worked out from the drawing on each
+ * read. Repaint, load and save times are this window's own, from the
+ * panel's PaintMetrics; the report covers the whole process. Operations run
+ * on the FX thread and wait for it.
+ */
+class PaintStats implements PaintStatsMBean {
+	private static final AtomicInteger windows = new AtomicInteger();
+
+	// Roughly, on a 64 bit JVM with compressed references: the fields of a
+	// PaintCommand, its two Rects and its Color, and a Point
+	private static final int COMMAND_BYTES = 160, POINT_BYTES = 24;
+
+	private PaintPanel panel;
+	private volatile PaintJournal journal;
+	private ObjectName name;
+
+	PaintStats(PaintPanel panel) {
+		this.panel = panel;
+	}
+
+	/**
+	 * Register this with the platform MBean server, under a name of its own.
+	 */
+	void register() {
+		try {
+			this.name = new ObjectName("MrKagabond.painter:type=PaintStats,window=" + windows.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.name);
+		} catch (JMException e) {
+			e.printStackTrace();
+			this.name = null;
+		}
+	}
+
+	void unregister() {
+		if (this.name == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		this.name = null;
+	}
+
+	void setJournal(PaintJournal journal) {
+		this.journal = journal;
+	}
+
+	private List<PaintCommand> commands() {
+		return this.panel.getPaintModel().snapshot();
+	}
+
+	private int count(Class<? extends PaintCommand> type) {
+		List<PaintCommand> commands = this.commands();
+		int count = 0;
+		for (int i = 0; i < commands.size(); i++) {
+			if (type.isInstance(commands.get(i))) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return roughly the bytes c takes, spare capacity included
+	 */
+	static long estimateBytes(PaintCommand c) {
+		long bytes = COMMAND_BYTES;
+		if (c instanceof CircleCommand) {
+			bytes += POINT_BYTES;
+		} else if (c instanceof RectangleCommand) {
+			bytes += 2 * POINT_BYTES;
+		} else if (c instanceof SquiggleCommand) {
+			bytes += ((SquiggleCommand) c).getPointBuffer().getRetainedBytes();
+		} else if (c instanceof PolygonCommand) {
+			bytes += ((PolygonCommand) c).getPointBuffer().getRetainedBytes();
+		}
+		return bytes;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	private static double throughput(long bytes, long nanos) {
+		return nanos > 0 ? bytes * 1e3 / nanos : 0;
+	}
+
+	private static void runOnFxThread(Runnable r) {
+		if (Platform.isFxApplicationThread()) {
+			r.run();
+			return;
+		}
+		FutureTask<Void> task = new FutureTask<Void>(r, null);
+		Platform.runLater(task);
+		try {
+			task.get(10, TimeUnit.SECONDS);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public int getCommandCount() {
+		return this.commands().size();
+	}
+
+	@Override
+	public int getCircleCount() {
+		return this.count(CircleCommand.class);
+	}
+
+	@Override
+	public int getRectangleCount() {
+		return this.count(RectangleCommand.class);
+	}
+
+	@Override
+	public int getSquiggleCount() {
+		return this.count(SquiggleCommand.class);
+	}
+
+	@Override
+	public int getPolygonCount() {
+		return this.count(PolygonCommand.class);
+	}
+
+	@Override
+	public long getPointCount() {
+		return PaintModel.countPoints(this.commands());
+	}
+
+	@Override
+	public long getRetainedBytes() {
+		List<PaintCommand> commands = this.commands();
+		long bytes = 0;
+		for (int i = 0; i < commands.size(); i++) {
+			bytes += estimateBytes(commands.get(i));
+		}
+		return bytes;
+	}
+
+	@Override
+	public long getRepaintCount() {
+		return this.panel.getFrameCount();
+	}
+
+	private PaintMetrics metrics() {
+		return this.panel.getMetrics();
+	}
+
+	@Override
+	public double getLastRepaintMillis() {
+		return millis(this.metrics().getRepaint().getLastNanos());
+	}
+
+	@Override
+	public double getP99RepaintMillis() {
+		return millis(this.metrics().getRepaint().getPercentile(0.99));
+	}
+
+	@Override
+	public double getLastLoadMillis() {
+		return millis(this.metrics().getLoad().getLastNanos());
+	}
+
+	@Override
+	public double getLastLoadMBPerSecond() {
+		PaintMetrics.Timer load = this.metrics().getLoad();
+		synchronized (load) {
+			return throughput(load.getLastBytes(), load.getLastNanos());
+		}
+	}
+
+	@Override
+	public double getLastSaveMillis() {
+		return millis(this.metrics().getSave().getLastNanos());
+	}
+
+	@Override
+	public double getLastSaveMBPerSecond() {
+		PaintMetrics.Timer save = this.metrics().getSave();
+		synchronized (save) {
+			return throughput(save.getLastBytes(), save.getLastNanos());
+		}
+	}
+
+	@Override
+	public boolean isJournalled() {
+		return this.journal != null;
+	}
+
+	@Override
+	public String getReport() {
+		return PaintMetrics.report();
+	}
+
+	/**
+	 * Throw away the committed layer and repaint every command.
+	 */
+	@Override
+	public void rebuildCache() {
+		runOnFxThread(() -> {
+			this.panel.invalidate();
+			this.panel.requestRepaint();
+		});
+	}
+
+	/**
+	 * Start a new journal generation from the drawing as it is now.
+	 */
+	@Override
+	public void compactJournal() {
+		PaintJournal journal = this.journal;
+		if (journal != null) {
+			runOnFxThread(journal::compact);
+		}
+	}
+
+	/**
+	 * Reset this window's timers.
+	 */
+	@Override
+	public void resetMetrics() {
+		this.metrics().reset();
+	}
+}
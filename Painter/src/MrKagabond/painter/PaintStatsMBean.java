@@ -0,0 +1,46 @@
+package MrKagabond.painter;
+
+/**
+ * What PaintStats shows over JMX, see there. Times are in milliseconds and
+ * throughputs in MB a second.
+ */
+public interface PaintStatsMBean {
+
+	int getCommandCount();
+
+	int getCircleCount();
+
+	int getRectangleCount();
+
+	int getSquiggleCount();
+
+	int getPolygonCount();
+
+	long getPointCount();
+
+	long getRetainedBytes();
+
+	long getRepaintCount();
+
+	double getLastRepaintMillis();
+
+	double getP99RepaintMillis();
+
+	double getLastLoadMillis();
+
+	double getLastLoadMBPerSecond();
+
+	double getLastSaveMillis();
+
+	double getLastSaveMBPerSecond();
+
+	boolean isJournalled();
+
+	String getReport();
+
+	void rebuildCache();
+
+	void compactJournal();
+
+	void resetMetrics();
+}
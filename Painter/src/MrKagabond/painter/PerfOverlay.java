@@ -0,0 +1,61 @@
+package MrKagabond.painter;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.layout.StackPane;
+import javafx.util.Duration;
+
+/**
+ * Frame rate, frame time percentiles and model size, shown over a
+ * PaintPanel's top left corner and updated twice a second. Frames are only
+ * drawn when something changed, so an idle drawing shows 0 fps. Frame times
+ * are the repaint times in the panel's PaintMetrics.
+ */
+class PerfOverlay extends Label {
+	private PaintPanel panel;
+	private long lastFrames, lastTime;
+	private Timeline updater = new Timeline(new KeyFrame(Duration.millis(500), e -> this.update()));
+
+	PerfOverlay(PaintPanel panel) {
+		this.panel = panel;
+		this.updater.setCycleCount(Animation.INDEFINITE);
+		this.setStyle("-fx-font-family: monospace; -fx-text-fill: white; -fx-background-color: rgba(0, 0, 0, 0.6);"
+				+ " -fx-padding: 4;");
+		this.setMouseTransparent(true);
+		this.setVisible(false);
+		StackPane.setAlignment(this, Pos.TOP_LEFT);
+	}
+
+	/**
+	 * Show and update this, with detailed timing on, or hide it.
+	 */
+	void setShowing(boolean showing) {
+		this.setVisible(showing);
+		PaintMetrics.setDetailed(showing);
+		if (showing) {
+			this.lastFrames = this.panel.getFrameCount();
+			this.lastTime = System.nanoTime();
+			this.update();
+			this.updater.play();
+		} else {
+			this.updater.stop();
+		}
+	}
+
+	private void update() {
+		long now = System.nanoTime(), frames = this.panel.getFrameCount();
+		double fps = now > this.lastTime ? (frames - this.lastFrames) * 1e9 / (now - this.lastTime) : 0;
+		this.lastFrames = frames;
+		this.lastTime = now;
+
+		long[] times = this.panel.getMetrics().getRepaint().getRecentNanos();
+		PaintModel model = this.panel.getPaintModel();
+		this.setText(String.format("%5.1f fps%nframe p50 %.2f  p95 %.2f  p99 %.2f  max %.2f ms%n%d commands, %d points",
+				fps, PaintMetrics.percentile(times, 0.5) / 1e6, PaintMetrics.percentile(times, 0.95) / 1e6,
+				PaintMetrics.percentile(times, 0.99) / 1e6, times.length > 0 ? times[times.length - 1] / 1e6 : 0.0,
+				model.getCommandCount(), model.getPointCount()));
+	}
+}
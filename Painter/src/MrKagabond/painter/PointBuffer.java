@@ -0,0 +1,258 @@
+package MrKagabond.painter;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * A growable list of integer points stored interleaved (x0,y0,x1,y1,...) in
+ * a single int array. Reading and appending do not allocate, apart from
+ * growing the array.
+ */
+public class PointBuffer {
+	private int[] xy;
+	private int size = 0;
+	private int shared = 0; // points [0, shared) of xy are read elsewhere, see share()
+
+	// Coordinates as doubles for GraphicsContext.strokePolyline, created on
+	// first use and kept in step with xy, points [0, synced) are current
+	private double[] xs, ys;
+	private int synced = 0;
+
+	public PointBuffer() {
+		this(16);
+	}
+
+	public PointBuffer(int capacity) {
+		this.xy = new int[2 * Math.max(capacity, 1)];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getX(int i) {
+		return xy[2 * i];
+	}
+
+	public int getY(int i) {
+		return xy[2 * i + 1];
+	}
+
+	public void add(int x, int y) {
+		if (2 * this.size == this.xy.length) {
+			this.ensureCapacity(this.size + 1);
+		} else if (this.size < this.shared) {
+			this.unshare();
+		}
+		this.xy[2 * this.size] = x;
+		this.xy[2 * this.size + 1] = y;
+		this.size++;
+	}
+
+	public void ensureCapacity(int capacity) {
+		if (2 * capacity > this.xy.length) {
+			this.xy = Arrays.copyOf(this.xy, Math.max(2 * capacity, 2 * this.xy.length));
+			this.shared = 0;
+		}
+	}
+
+	/**
+	 * @return the backing array, whose first size() points are never written
+	 *         again: a change that would overwrite them copies the array
+	 *         first. For reading the points as they are now on another
+	 *         thread without copying them here.
+	 */
+	int[] share() {
+		// An earlier share may still be reading more points than there are now
+		this.shared = Math.max(this.shared, this.size);
+		return this.xy;
+	}
+
+	private void unshare() {
+		this.xy = this.xy.clone();
+		this.shared = 0;
+	}
+
+	/**
+	 * @return roughly the bytes this and its arrays take, spare capacity
+	 *         included, on a 64 bit JVM with compressed references
+	 */
+	long getRetainedBytes() {
+		long bytes = 32 + 16 + 4L * this.xy.length;
+		if (this.xs != null) {
+			bytes += 2 * (16 + 8L * this.xs.length);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Keep only the first size points.
+	 */
+	public void truncate(int size) {
+		this.size = Math.min(this.size, size);
+		this.synced = Math.min(this.synced, this.size);
+	}
+
+	/**
+	 * Remove the last point.
+	 */
+	public void pop() {
+		this.size--;
+		this.synced = Math.min(this.synced, this.size);
+	}
+
+	/**
+	 * @return a copy of the points, interleaved x,y
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(this.xy, 2 * this.size);
+	}
+
+	/**
+	 * Replace all points with the interleaved x,y pairs in xy.
+	 */
+	public void setAll(int[] xy) {
+		this.xy = Arrays.copyOf(xy, Math.max(xy.length, 2));
+		this.size = xy.length / 2;
+		this.synced = 0;
+		this.shared = 0;
+	}
+
+	public void clear() {
+		this.size = 0;
+		this.synced = 0;
+	}
+
+	/**
+	 * Drop points using Douglas-Peucker: a point is only kept if leaving it
+	 * out would move the line by more than tolerance. The first and last
+	 * points are always kept.
+	 * 
+	 * @param tolerance the largest allowed distance, in pixels
+	 */
+	public void simplify(double tolerance) {
+		if (this.size < 3)
+			return;
+		boolean[] keep = new boolean[this.size];
+		keep[0] = keep[this.size - 1] = true;
+		// Explicit stack of [first, last] ranges, long strokes would overflow
+		// a recursive version
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = this.size - 1;
+		while (top > 0) {
+			int last = stack[--top];
+			int first = stack[--top];
+			int farthest = -1;
+			double maxDistance = tolerance;
+			for (int i = first + 1; i < last; i++) {
+				double d = this.distanceToSegment(i, first, last);
+				if (d > maxDistance) {
+					maxDistance = d;
+					farthest = i;
+				}
+			}
+			if (farthest < 0)
+				continue;
+			keep[farthest] = true;
+			if (top + 4 > stack.length)
+				stack = Arrays.copyOf(stack, 2 * stack.length);
+			stack[top++] = first;
+			stack[top++] = farthest;
+			stack[top++] = farthest;
+			stack[top++] = last;
+		}
+		if (this.shared > 0) {
+			this.unshare();
+		}
+		int n = 0;
+		for (int i = 0; i < this.size; i++) {
+			if (keep[i]) {
+				this.xy[2 * n] = this.xy[2 * i];
+				this.xy[2 * n + 1] = this.xy[2 * i + 1];
+				n++;
+			}
+		}
+		this.size = n;
+		this.synced = 0;
+	}
+
+	private double distanceToSegment(int p, int a, int b) {
+		double px = getX(p), py = getY(p);
+		double ax = getX(a), ay = getY(a);
+		double dx = getX(b) - ax, dy = getY(b) - ay;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = 0;
+		if (lengthSquared > 0) {
+			t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+		}
+		double ex = ax + t * dx - px, ey = ay + t * dy - py;
+		return Math.sqrt(ex * ex + ey * ey);
+	}
+
+	/**
+	 * Stroke the points as one polyline, in a single call rather than one
+	 * call per segment. Nothing is drawn for fewer than two points.
+	 */
+	public void strokePolyline(GraphicsContext g) {
+		if (this.size < 2)
+			return;
+		if (this.xs == null || this.xs.length < this.size) {
+			int capacity = this.xy.length / 2;
+			this.xs = this.xs == null ? new double[capacity] : Arrays.copyOf(this.xs, capacity);
+			this.ys = this.ys == null ? new double[capacity] : Arrays.copyOf(this.ys, capacity);
+		}
+		// Only points added since the last frame need converting
+		for (int i = this.synced; i < this.size; i++) {
+			this.xs[i] = this.xy[2 * i];
+			this.ys[i] = this.xy[2 * i + 1];
+		}
+		this.synced = this.size;
+		g.strokePolyline(this.xs, this.ys, this.size);
+	}
+
+	public void strokePolyline(Graphics2D g) {
+		if (this.size < 2)
+			return;
+		int[] xy = this.xy;
+		Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, this.size);
+		path.moveTo(xy[0], xy[1]);
+		for (int i = 2; i < 2 * this.size; i += 2) {
+			path.lineTo(xy[i], xy[i + 1]);
+		}
+		g.draw(path);
+	}
+
+	/**
+	 * @return the backing array, holding size() interleaved points
+	 */
+	int[] array() {
+		return xy;
+	}
+
+	/**
+	 * @return a read only List view of the points, creating a Point for each
+	 *         element read
+	 */
+	public List<Point> asList() {
+		return new AbstractList<Point>() {
+			@Override
+			public Point get(int i) {
+				if (i < 0 || i >= size)
+					throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+				return new Point(getX(i), getY(i));
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+}
@@ -22,15 +22,22 @@ class PolygonManipulatorStrategy extends ShapeManipulatorStrategy {
 				this.polygonCommand.add(new Point((int) e.getX(), (int) e.getY()));
 			}
 		} else if (e.isSecondaryButtonDown()) {
-			hasStarted = false;
-			polygonCommand = null;
+			this.finish();
 		}
 	}
 
+	@Override
+	public void finish() {
+		hasStarted = false;
+		polygonCommand = null;
+	}
+
 	public void mouseMoved(MouseEvent e) {
 		if (hasStarted) {
+			this.getPaintModel().beginBatch();
 			this.polygonCommand.add(new Point((int) e.getX(), (int) e.getY()));
 			this.polygonCommand.pop();
+			this.getPaintModel().endBatch();
 		}
 	}
 }
\ No newline at end of file
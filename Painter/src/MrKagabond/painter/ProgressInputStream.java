@@ -0,0 +1,77 @@
+package MrKagabond.painter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.function.LongConsumer;
+
+/**
+ * Counts the bytes read through it, telling progress after each read, and
+ * stops reading once the reading thread is interrupted, so that a background
+ * load can be cancelled.
+ */
+class ProgressInputStream extends FilterInputStream {
+	private LongConsumer progress;
+	private long count = 0;
+
+	/**
+	 * @param progress told the bytes read so far, or null
+	 */
+	ProgressInputStream(InputStream in, LongConsumer progress) {
+		super(in);
+		this.progress = progress;
+	}
+
+	/**
+	 * Tell progress the bytes read so far from the next read on, counting
+	 * those already read.
+	 */
+	void setProgress(LongConsumer progress) {
+		this.progress = progress;
+	}
+
+	@Override
+	public int read() throws IOException {
+		this.checkInterrupted();
+		int b = super.read();
+		if (b >= 0) {
+			this.advance(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		this.checkInterrupted();
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			this.advance(n);
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		this.advance(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void advance(long n) {
+		this.count += n;
+		if (this.progress != null) {
+			this.progress.accept(this.count);
+		}
+	}
+
+	private void checkInterrupted() throws InterruptedIOException {
+		if (Thread.currentThread().isInterrupted())
+			throw new InterruptedIOException("Cancelled after " + this.count + " bytes");
+	}
+}
@@ -0,0 +1,81 @@
+package MrKagabond.painter;
+
+/**
+ * A mutable axis aligned box with inclusive integer corners. A Rect with
+ * minX > maxX is empty.
+ */
+public class Rect {
+	int minX, minY, maxX, maxY;
+
+	public Rect() {
+		this.clear();
+	}
+
+	public Rect(int minX, int minY, int maxX, int maxY) {
+		this.set(minX, minY, maxX, maxY);
+	}
+
+	public Rect(Rect r) {
+		this.set(r);
+	}
+
+	public void clear() {
+		this.minX = this.minY = Integer.MAX_VALUE;
+		this.maxX = this.maxY = Integer.MIN_VALUE;
+	}
+
+	public boolean isEmpty() {
+		return this.minX > this.maxX || this.minY > this.maxY;
+	}
+
+	public void set(int minX, int minY, int maxX, int maxY) {
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+	}
+
+	public void set(Rect r) {
+		this.set(r.minX, r.minY, r.maxX, r.maxY);
+	}
+
+	/**
+	 * Grow this to include the point (x,y).
+	 */
+	public void add(int x, int y) {
+		if (x < this.minX) this.minX = x;
+		if (y < this.minY) this.minY = y;
+		if (x > this.maxX) this.maxX = x;
+		if (y > this.maxY) this.maxY = y;
+	}
+
+	/**
+	 * Grow this to include r.
+	 */
+	public void add(Rect r) {
+		if (r.isEmpty()) return;
+		this.add(r.minX, r.minY);
+		this.add(r.maxX, r.maxY);
+	}
+
+	public boolean intersects(Rect r) {
+		return !this.isEmpty() && !r.isEmpty() && this.minX <= r.maxX && r.minX <= this.maxX
+				&& this.minY <= r.maxY && r.minY <= this.maxY;
+	}
+
+	public boolean contains(int x, int y) {
+		return this.minX <= x && x <= this.maxX && this.minY <= y && y <= this.maxY;
+	}
+
+	public int getMinX() { return minX; }
+	public int getMinY() { return minY; }
+	public int getMaxX() { return maxX; }
+	public int getMaxY() { return maxY; }
+	public int getWidth() { return isEmpty() ? 0 : maxX - minX; }
+	public int getHeight() { return isEmpty() ? 0 : maxY - minY; }
+
+	public String toString() {
+		if (this.isEmpty()) return "[empty]";
+		return "[(" + minX + "," + minY + "),(" + maxX + "," + maxY + ")]";
+	}
+}
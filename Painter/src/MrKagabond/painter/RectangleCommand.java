@@ -1,6 +1,6 @@
 package MrKagabond.painter;
 
-import javafx.scene.canvas.GraphicsContext;
+import java.io.IOException;
 
 public class RectangleCommand extends PaintCommand {
 	private Point p1, p2;
@@ -8,8 +8,7 @@ public class RectangleCommand extends PaintCommand {
 	public RectangleCommand(Point p1, Point p2) {
 		this.p1 = p1;
 		this.p2 = p2;
-		this.setChanged();
-		this.notifyObservers();
+		this.updateBounds();
 	}
 
 	public Point getP1() {
@@ -17,19 +16,58 @@ public class RectangleCommand extends PaintCommand {
 	}
 
 	public void setP1(Point p1) {
+		this.beginChange();
+		this.remember(this.p1);
 		this.p1 = p1;
-		this.setChanged();
-		this.notifyObservers();
+		this.updateBounds();
+		this.endChange(PaintModelEvent.Delta.P1);
 	}
 
 	public Point getP2() {
 		return p2;
 	}
 
+	@Override
+	public int getPointCount() {
+		return 2;
+	}
+
+	/**
+	 * Move the second corner in place, without allocating a Point.
+	 */
+	public void setP2(int x, int y) {
+		if (this.p2 == null) {
+			this.setP2(new Point(x, y));
+			return;
+		}
+		this.beginChange();
+		this.remember(this.p2);
+		this.p2.x = x;
+		this.p2.y = y;
+		this.updateBounds();
+		this.endChange(PaintModelEvent.Delta.P2);
+	}
+
 	public void setP2(Point p2) {
+		this.beginChange();
+		this.remember(this.p2);
 		this.p2 = p2;
-		this.setChanged();
-		this.notifyObservers();
+		this.updateBounds();
+		this.endChange(PaintModelEvent.Delta.P2);
+	}
+
+	private void remember(Point old) {
+		if (old != null) {
+			this.oldX = old.x;
+			this.oldY = old.y;
+		}
+	}
+
+	private void updateBounds() {
+		if (p1 == null || p2 == null) return;
+		this.bounds.clear();
+		this.bounds.add(p1.x, p1.y);
+		this.bounds.add(p2.x, p2.y);
 	}
 
 	public Point getTopLeft() {
@@ -47,15 +85,36 @@ public class RectangleCommand extends PaintCommand {
 	}
 
 	@Override
-	public void execute(GraphicsContext g) {
-		Point topLeft = this.getTopLeft();
-		Point dimensions = this.getDimensions();
+	void writeTo(PaintFileWriter out) throws IOException {
+		out.write("Rectangle\n");
+		out.writeStyle(this);
+		out.write("\tp1:");
+		out.writePoint(this.p1);
+		out.write("\tp2:");
+		out.writePoint(this.p2);
+		out.write("End Rectangle\n");
+	}
+
+	@Override
+	void writeTo(PaintBinaryFormat.Writer out) throws IOException {
+		boolean placed = this.p1 != null && this.p2 != null;
+		out.writeStyle(PaintBinaryFormat.RECTANGLE, this, placed);
+		if (placed) {
+			out.writePoint(this.p1);
+			out.writePoint(this.p2);
+		}
+	}
+
+	// The bounds are the normalized corners, so drawing needs no new Points
+
+	@Override
+	public void draw(PaintRenderer r) {
+		Rect b = this.bounds;
+		r.setColor(this.getColor());
 		if (this.isFill()) {
-			g.setFill(this.getColor());
-			g.fillRect(topLeft.x, topLeft.y, dimensions.x, dimensions.y);
+			r.fillRect(b.minX, b.minY, b.getWidth(), b.getHeight());
 		} else {
-			g.setStroke(this.getColor());
-			g.strokeRect(topLeft.x, topLeft.y, dimensions.x, dimensions.y);
+			r.strokeRect(b.minX, b.minY, b.getWidth(), b.getHeight());
 		}
 	}
 
@@ -10,8 +10,7 @@ class RectangleManipulatorStrategy extends ShapeManipulatorStrategy {
 	
 	@Override
 	public void mouseDragged(MouseEvent e) {
-		Point p2=new Point((int)e.getX(), (int)e.getY());
-		this.rectangleCommand.setP2(p2);
+		this.rectangleCommand.setP2((int)e.getX(), (int)e.getY());
 	}
 
 	@Override
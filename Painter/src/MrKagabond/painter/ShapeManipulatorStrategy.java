@@ -5,11 +5,27 @@ import javafx.scene.input.MouseEvent;
 
 public class ShapeManipulatorStrategy implements  EventHandler<MouseEvent> {
 	private PaintModel paintModel;
+	private StrokeFilter strokeFilter = new StrokeFilter();
 	
 	ShapeManipulatorStrategy(PaintModel paintModel){
 		this.paintModel=paintModel;
 	}
 	
+	/**
+	 * @return the filter freehand input passes through before it reaches a command
+	 */
+	public StrokeFilter getStrokeFilter() {
+		return strokeFilter;
+	}
+	
+	public void setStrokeFilter(StrokeFilter strokeFilter) {
+		this.strokeFilter = strokeFilter;
+	}
+	
+	PaintModel getPaintModel(){
+		return this.paintModel;
+	}
+	
 	void addCommand(PaintCommand command){
 		this.paintModel.addCommand(command);
 	}
@@ -32,6 +48,11 @@ public class ShapeManipulatorStrategy implements  EventHandler<MouseEvent> {
 			this.mouseExited(event);
 		}
 	}
+	/**
+	 * End the shape in progress, if any, as before undo or redo changes the
+	 * model under it.
+	 */
+	public void finish() { }
 	public void mouseMoved(MouseEvent e) { }
 	public void mouseDragged(MouseEvent e) { }
 	public void mouseClicked(MouseEvent e) { }
@@ -0,0 +1,220 @@
+package MrKagabond.painter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A uniform grid over the bounds of PaintCommands. Each cell lists the
+ * commands whose bounds overlap it, so region and point queries only look at
+ * the commands near the region instead of the whole model. Coordinates
+ * outside the grid are clamped to the border cells; PaintModel grows the grid,
+ * up to MAX_SIZE, when the drawing outgrows it.
+ *
+ * Each command keeps its position in every cell it is in, so it leaves a
+ * cell in constant time: the last command in the cell takes its place.
+ */
+class SpatialIndex {
+	static final int CELL_SIZE = 64;
+	// The grid stops growing here, far-out commands share the border cells
+	static final int MAX_SIZE = 1 << 14;
+
+	private static final Comparator<PaintCommand> Z_ORDER = new Comparator<PaintCommand>() {
+		@Override
+		public int compare(PaintCommand a, PaintCommand b) {
+			return Integer.compare(a.z, b.z);
+		}
+	};
+
+	private int cols, rows;
+	private ArrayList<PaintCommand>[] cells;
+	private int stamp = 0; // marks commands already seen by the current query
+	private int[] oldSlots = new int[16]; // the slots of the command being moved
+
+	SpatialIndex(int width, int height) {
+		this.resize(width, height);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resize(int width, int height) {
+		this.cols = Math.max(1, (width + CELL_SIZE - 1) / CELL_SIZE);
+		this.rows = Math.max(1, (height + CELL_SIZE - 1) / CELL_SIZE);
+		this.cells = (ArrayList<PaintCommand>[]) new ArrayList<?>[this.cols * this.rows];
+	}
+
+	/**
+	 * @return whether r lies inside the grid without clamping
+	 */
+	boolean covers(Rect r) {
+		int width = this.cols * CELL_SIZE, height = this.rows * CELL_SIZE;
+		return r.isEmpty()
+				|| ((r.maxX < width || width >= MAX_SIZE) && (r.maxY < height || height >= MAX_SIZE));
+	}
+
+	/**
+	 * Grow the grid to cover r and re-insert all of commands.
+	 */
+	void rebuild(List<PaintCommand> commands, Rect r) {
+		int width = this.cols * CELL_SIZE, height = this.rows * CELL_SIZE;
+		while (r.maxX >= width && width < MAX_SIZE)
+			width *= 2;
+		while (r.maxY >= height && height < MAX_SIZE)
+			height *= 2;
+		this.resize(width, height);
+		for (PaintCommand c : commands) {
+			c.indexedBounds.clear();
+			this.update(c);
+		}
+	}
+
+	void clear() {
+		for (int i = 0; i < this.cells.length; i++) {
+			this.cells[i] = null;
+		}
+	}
+
+	private int cellX(int x) {
+		return Math.max(0, Math.min(this.cols - 1, x / CELL_SIZE));
+	}
+
+	private int cellY(int y) {
+		return Math.max(0, Math.min(this.rows - 1, y / CELL_SIZE));
+	}
+
+	/**
+	 * @return where in c.cellSlots its slot in cell (x,y) is kept
+	 */
+	private int slotIndex(PaintCommand c, int x, int y) {
+		Rect b = c.indexedBounds;
+		int x0 = cellX(b.minX);
+		return (y - cellY(b.minY)) * (cellX(b.maxX) - x0 + 1) + x - x0;
+	}
+
+	/**
+	 * Take the command at slot out of cell (x,y), moving the cell's last
+	 * command into its place.
+	 */
+	private void removeAt(int x, int y, int slot) {
+		ArrayList<PaintCommand> cell = this.cells[y * this.cols + x];
+		PaintCommand last = cell.remove(cell.size() - 1);
+		if (slot < cell.size()) {
+			cell.set(slot, last);
+			last.cellSlots[this.slotIndex(last, x, y)] = slot;
+		}
+	}
+
+	/**
+	 * Move c from the cells of the bounds it was indexed under to the cells of
+	 * its current bounds. Only cells entering or leaving the range are touched.
+	 */
+	void update(PaintCommand c) {
+		Rect o = c.indexedBounds;
+		Rect n = c.getBounds();
+		boolean hadOld = !o.isEmpty(), hasNew = !n.isEmpty();
+		int ox0 = 0, oy0 = 0, ox1 = -1, oy1 = -1;
+		int nx0 = 0, ny0 = 0, nx1 = -1, ny1 = -1;
+		if (hadOld) {
+			ox0 = cellX(o.minX); ox1 = cellX(o.maxX);
+			oy0 = cellY(o.minY); oy1 = cellY(o.maxY);
+		}
+		if (hasNew) {
+			nx0 = cellX(n.minX); nx1 = cellX(n.maxX);
+			ny0 = cellY(n.minY); ny1 = cellY(n.maxY);
+		}
+		if (hadOld && hasNew && ox0 == nx0 && ox1 == nx1 && oy0 == ny0 && oy1 == ny1) {
+			o.set(n);
+			return;
+		}
+		int oldCount = (ox1 - ox0 + 1) * (oy1 - oy0 + 1);
+		if (this.oldSlots.length < oldCount) {
+			this.oldSlots = new int[Math.max(oldCount, 2 * this.oldSlots.length)];
+		}
+		if (oldCount > 0) {
+			System.arraycopy(c.cellSlots, 0, this.oldSlots, 0, oldCount);
+		}
+		for (int y = oy0; y <= oy1; y++) {
+			for (int x = ox0; x <= ox1; x++) {
+				if (x < nx0 || x > nx1 || y < ny0 || y > ny1) {
+					this.removeAt(x, y, this.oldSlots[(y - oy0) * (ox1 - ox0 + 1) + x - ox0]);
+				}
+			}
+		}
+		o.set(n);
+		int newCount = (nx1 - nx0 + 1) * (ny1 - ny0 + 1);
+		if (c.cellSlots == null || c.cellSlots.length < newCount) {
+			c.cellSlots = new int[Math.max(newCount, c.cellSlots == null ? 1 : 2 * c.cellSlots.length)];
+		}
+		for (int y = ny0; y <= ny1; y++) {
+			for (int x = nx0; x <= nx1; x++) {
+				int slot;
+				if (x < ox0 || x > ox1 || y < oy0 || y > oy1) {
+					int i = y * this.cols + x;
+					if (this.cells[i] == null) {
+						this.cells[i] = new ArrayList<PaintCommand>();
+					}
+					slot = this.cells[i].size();
+					this.cells[i].add(c);
+				} else {
+					slot = this.oldSlots[(y - oy0) * (ox1 - ox0 + 1) + x - ox0];
+				}
+				c.cellSlots[(y - ny0) * (nx1 - nx0 + 1) + x - nx0] = slot;
+			}
+		}
+	}
+
+	void remove(PaintCommand c) {
+		Rect o = c.indexedBounds;
+		if (!o.isEmpty()) {
+			int x0 = cellX(o.minX), x1 = cellX(o.maxX), y0 = cellY(o.minY), y1 = cellY(o.maxY);
+			for (int y = y0; y <= y1; y++) {
+				for (int x = x0; x <= x1; x++) {
+					this.removeAt(x, y, c.cellSlots[(y - y0) * (x1 - x0 + 1) + x - x0]);
+				}
+			}
+		}
+		o.clear();
+	}
+
+	/**
+	 * Add to out, in drawing order, every command whose bounds intersect r.
+	 */
+	void query(Rect r, List<PaintCommand> out) {
+		if (r.isEmpty())
+			return;
+		this.stamp++;
+		int x0 = cellX(r.minX), x1 = cellX(r.maxX);
+		int y0 = cellY(r.minY), y1 = cellY(r.maxY);
+		for (int y = y0; y <= y1; y++) {
+			for (int x = x0; x <= x1; x++) {
+				ArrayList<PaintCommand> cell = this.cells[y * this.cols + x];
+				if (cell == null)
+					continue;
+				for (int i = 0; i < cell.size(); i++) {
+					PaintCommand c = cell.get(i);
+					if (c.queryStamp != this.stamp && c.getBounds().intersects(r)) {
+						c.queryStamp = this.stamp;
+						out.add(c);
+					}
+				}
+			}
+		}
+		out.sort(Z_ORDER);
+	}
+
+	/**
+	 * @return the last drawn command covering (x,y), or null
+	 */
+	PaintCommand topmostAt(int x, int y) {
+		ArrayList<PaintCommand> cell = this.cells[cellY(y) * this.cols + cellX(x)];
+		PaintCommand top = null;
+		if (cell == null)
+			return null;
+		for (int i = 0; i < cell.size(); i++) {
+			PaintCommand c = cell.get(i);
+			if ((top == null || c.z > top.z) && c.hits(x, y)) {
+				top = c;
+			}
+		}
+		return top;
+	}
+}
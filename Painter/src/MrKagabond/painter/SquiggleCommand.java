@@ -1,27 +1,90 @@
 package MrKagabond.painter;
-import javafx.scene.canvas.GraphicsContext;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 public class SquiggleCommand extends PaintCommand {
-	private ArrayList<Point> points=new ArrayList<Point>();
+	private PointBuffer points=new PointBuffer();
 	
-	public void add(Point p){ 
-		this.points.add(p); 
-		this.setChanged();
-		this.notifyObservers();
+	public void add(Point p) {
+		this.add(p.x, p.y);
 	}
-	public ArrayList<Point> getPoints(){ return this.points; }
+	public void add(int x, int y) {
+		this.beginChange();
+		this.points.add(x, y);
+		this.bounds.add(x, y);
+		this.endChange(PaintModelEvent.Delta.POINT_APPENDED);
+	}
+	/**
+	 * Simplify the stroke, see PointBuffer.simplify.
+	 */
+	public void simplify(double tolerance) {
+		this.beginChange();
+		this.oldPoints = this.points.toArray();
+		this.points.simplify(tolerance);
+		this.bounds.clear();
+		for(int i=0;i<points.size();i++){
+			this.bounds.add(points.getX(i), points.getY(i));
+		}
+		this.endChange(PaintModelEvent.Delta.POINTS_REPLACED);
+	}
+	/**
+	 * Replace all points with the interleaved x,y pairs in xy.
+	 */
+	public void setPoints(int[] xy) {
+		this.beginChange();
+		this.oldPoints = this.points.toArray();
+		this.points.setAll(xy);
+		this.bounds.clear();
+		for (int i = 0; i < this.points.size(); i++) {
+			this.bounds.add(this.points.getX(i), this.points.getY(i));
+		}
+		this.endChange(PaintModelEvent.Delta.POINTS_REPLACED);
+	}
+	/**
+	 * Keep only the first size points.
+	 *
+	 * @return the points removed, interleaved x,y
+	 */
+	public int[] truncate(int size) {
+		this.beginChange();
+		int[] removed = Arrays.copyOfRange(this.points.array(), 2 * size, 2 * this.points.size());
+		this.oldPoints = removed;
+		this.points.truncate(size);
+		this.bounds.clear();
+		for (int i = 0; i < this.points.size(); i++) {
+			this.bounds.add(this.points.getX(i), this.points.getY(i));
+		}
+		this.endChange(PaintModelEvent.Delta.POINTS_TRUNCATED);
+		return removed;
+	}
+	public PointBuffer getPointBuffer(){ return this.points; }
+	@Override
+	public int getPointCount(){ return this.points.size(); }
+	/**
+	 * @return a read only view of the points, prefer getPointBuffer()
+	 */
+	public List<Point> getPoints(){ return this.points.asList(); }
 	
 	
 	@Override
-	public void execute(GraphicsContext g) {
-		ArrayList<Point> points = this.getPoints();
-		g.setStroke(this.getColor());
-		for(int i=0;i<points.size()-1;i++){
-			Point p1 = points.get(i);
-			Point p2 = points.get(i+1);
-			g.strokeLine(p1.x, p1.y, p2.x, p2.y);
-		}
-		
+	void writeTo(PaintFileWriter out) throws IOException {
+		out.write("Squiggle\n");
+		out.writeStyle(this);
+		out.write("\tpoints\n");
+		out.writePoints(this.points, "\t\tpoint:");
+		out.write("\tend points\nEnd Squiggle\n");
+	}
+
+	@Override
+	void writeTo(PaintBinaryFormat.Writer out) throws IOException {
+		out.writeStyle(PaintBinaryFormat.SQUIGGLE, this);
+		out.writePoints(this.points);
+	}
+
+	@Override
+	public void draw(PaintRenderer r) {
+		r.setColor(this.getColor());
+		r.strokePolyline(this.points);
 	}
 }
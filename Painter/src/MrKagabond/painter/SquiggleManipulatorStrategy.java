@@ -9,12 +9,26 @@ class SquiggleManipulatorStrategy extends ShapeManipulatorStrategy {
 	private SquiggleCommand squiggleCommand;
 	@Override
 	public void mouseDragged(MouseEvent e) {
-		this.squiggleCommand.add(new Point((int)e.getX(), (int)e.getY()));
+		int x = (int)e.getX(), y = (int)e.getY();
+		if (this.getStrokeFilter().accept(x, y)) {
+			this.squiggleCommand.add(x, y);
+		}
 	}
 
 	@Override
 	public void mousePressed(MouseEvent e) {
 			this.squiggleCommand = new SquiggleCommand();
+			this.getStrokeFilter().begin();
 			this.addCommand(squiggleCommand);
 	}
+
+	@Override
+	public void mouseReleased(MouseEvent e) {
+		if (this.squiggleCommand != null) {
+			this.getPaintModel().beginBatch();
+			this.getStrokeFilter().end(this.squiggleCommand);
+			this.getPaintModel().endBatch();
+			this.squiggleCommand = null;
+		}
+	}
 }
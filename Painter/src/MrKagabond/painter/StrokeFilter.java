@@ -0,0 +1,91 @@
+package MrKagabond.painter;
+
+/**
+ * Filters the mouse positions of a freehand stroke before they reach a
+ * SquiggleCommand. Positions closer than minDistance to the last kept point
+ * are dropped (so are exact repeats, when suppressDuplicates is set), and when
+ * the stroke ends it is simplified with the given tolerance. The defaults do
+ * not visibly change a stroke.
+ */
+public class StrokeFilter {
+	private double minDistance = 2;
+	private boolean suppressDuplicates = true;
+	private double simplifyTolerance = 0.5;
+
+	private boolean started = false;
+	private int lastX, lastY; // last point let through
+	private boolean pending = false; // a dropped point that may end the stroke
+	private int pendingX, pendingY;
+
+	public double getMinDistance() {
+		return minDistance;
+	}
+
+	public void setMinDistance(double minDistance) {
+		this.minDistance = minDistance;
+	}
+
+	public boolean isSuppressDuplicates() {
+		return suppressDuplicates;
+	}
+
+	public void setSuppressDuplicates(boolean suppressDuplicates) {
+		this.suppressDuplicates = suppressDuplicates;
+	}
+
+	/**
+	 * @return the Douglas-Peucker tolerance applied when a stroke ends, 0
+	 *         turns simplification off
+	 */
+	public double getSimplifyTolerance() {
+		return simplifyTolerance;
+	}
+
+	public void setSimplifyTolerance(double simplifyTolerance) {
+		this.simplifyTolerance = simplifyTolerance;
+	}
+
+	/**
+	 * Start filtering a new stroke.
+	 */
+	public void begin() {
+		this.started = false;
+		this.pending = false;
+	}
+
+	/**
+	 * @return whether (x,y) should be added to the stroke
+	 */
+	public boolean accept(int x, int y) {
+		if (this.started) {
+			long dx = x - this.lastX, dy = y - this.lastY;
+			boolean duplicate = dx == 0 && dy == 0;
+			if ((duplicate && this.suppressDuplicates)
+					|| (!duplicate && dx * dx + dy * dy < this.minDistance * this.minDistance)) {
+				this.pending = !duplicate;
+				this.pendingX = x;
+				this.pendingY = y;
+				return false;
+			}
+		}
+		this.started = true;
+		this.pending = false;
+		this.lastX = x;
+		this.lastY = y;
+		return true;
+	}
+
+	/**
+	 * Finish the stroke: add the final position if it was dropped, so the
+	 * stroke ends where the mouse did, then simplify it.
+	 */
+	public void end(SquiggleCommand squiggle) {
+		if (this.pending) {
+			squiggle.add(this.pendingX, this.pendingY);
+			this.pending = false;
+		}
+		if (this.simplifyTolerance > 0) {
+			squiggle.simplify(this.simplifyTolerance);
+		}
+	}
+}
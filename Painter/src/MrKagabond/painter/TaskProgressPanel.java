@@ -0,0 +1,48 @@
+package MrKagabond.painter;
+
+import javafx.concurrent.Task;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
+
+/**
+ * A status bar showing the message and progress of a background Task, with a
+ * button to cancel it.
+ */
+public class TaskProgressPanel extends HBox implements EventHandler<ActionEvent> {
+
+	private Label message = new Label();
+	private ProgressBar progressBar = new ProgressBar();
+	private Button cancelButton = new Button("Cancel");
+	private Task<?> task;
+
+	public TaskProgressPanel() {
+		super(8);
+		this.setPadding(new Insets(4));
+		this.setAlignment(Pos.CENTER_LEFT);
+		this.progressBar.setPrefWidth(200);
+		this.cancelButton.setOnAction(this);
+		this.getChildren().addAll(this.progressBar, this.message, this.cancelButton);
+	}
+
+	/**
+	 * Follow task, until the next one is shown.
+	 */
+	public void show(Task<?> task) {
+		this.task = task;
+		this.message.textProperty().bind(task.messageProperty());
+		this.progressBar.progressProperty().bind(task.progressProperty());
+	}
+
+	@Override
+	public void handle(ActionEvent event) {
+		if (this.task != null) {
+			this.task.cancel();
+		}
+	}
+}
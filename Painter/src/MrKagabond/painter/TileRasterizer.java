@@ -0,0 +1,97 @@
+package MrKagabond.painter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+
+/**
+ * Rasterizes a range of a PaintModel's commands in square tiles. Each tile
+ * is drawn with Java2D into its own pixel buffer on a fork-join pool, then
+ * the finished tiles are written into the target on the calling thread.
+ */
+class TileRasterizer {
+	static final int TILE_SIZE = 128;
+	// Strokes and antialiasing bleed a little past a command's bounds, and
+	// into the next tile
+	private static final int MARGIN = 2;
+
+	private ForkJoinPool pool;
+
+	TileRasterizer() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	TileRasterizer(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	private static class Tile extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		int x, y, width, height;
+		List<PaintCommand> commands = new ArrayList<PaintCommand>();
+		BufferedImage image;
+
+		Tile(int x, int y, int width, int height) {
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		protected void compute() {
+			this.image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_ARGB_PRE);
+			Java2DPaintRenderer r = new Java2DPaintRenderer(this.image);
+			r.getGraphics().translate(-this.x, -this.y);
+			for (PaintCommand c : this.commands) {
+				c.draw(r);
+			}
+			r.dispose();
+		}
+	}
+
+	/**
+	 * Draw the commands with index in [0, to) of model into the width x
+	 * height area of writer, replacing whatever was there.
+	 */
+	void render(PaintModel model, int to, PixelWriter writer, int width, int height) {
+		ArrayList<Tile> tiles = new ArrayList<Tile>();
+		Rect r = new Rect();
+		// The spatial index is not thread safe, so tiles are filled in here
+		for (int y = 0; y < height; y += TILE_SIZE) {
+			for (int x = 0; x < width; x += TILE_SIZE) {
+				Tile tile = new Tile(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+				r.set(x - MARGIN, y - MARGIN, x + tile.width - 1 + MARGIN, y + tile.height - 1 + MARGIN);
+				for (PaintCommand c : model.getCommandsIntersecting(r)) {
+					if (c.z < to) {
+						tile.commands.add(c);
+					}
+				}
+				tiles.add(tile);
+			}
+		}
+
+		this.pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tiles);
+			}
+		});
+
+		PixelFormat<IntBuffer> format = PixelFormat.getIntArgbPreInstance();
+		for (Tile tile : tiles) {
+			int[] pixels = ((DataBufferInt) tile.image.getRaster().getDataBuffer()).getData();
+			writer.setPixels(tile.x, tile.y, tile.width, tile.height, format, pixels, 0, tile.width);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package MrKagabond.painter;
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.paint.Color;
+
+public class TileRasterizerTest {
+
+	/**
+	 * Collects the int pixels a TileRasterizer writes, the only kind it
+	 * writes.
+	 */
+	private static class IntPixelWriter implements PixelWriter {
+		final int width;
+		final int[] pixels;
+
+		IntPixelWriter(int width, int height) {
+			this.width = width;
+			this.pixels = new int[width * height];
+		}
+
+		@Override
+		public PixelFormat<?> getPixelFormat() {
+			return PixelFormat.getIntArgbPreInstance();
+		}
+
+		@Override
+		public void setPixels(int x, int y, int w, int h, PixelFormat<IntBuffer> pixelformat, int[] buffer,
+				int offset, int scanlineStride) {
+			for (int j = 0; j < h; j++) {
+				System.arraycopy(buffer, offset + j * scanlineStride, this.pixels, (y + j) * this.width + x, w);
+			}
+		}
+
+		@Override
+		public void setArgb(int x, int y, int argb) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setColor(int x, int y, Color c) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public <T extends Buffer> void setPixels(int x, int y, int w, int h, PixelFormat<T> pixelformat, T buffer,
+				int scanlineStride) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setPixels(int x, int y, int w, int h, PixelFormat<ByteBuffer> pixelformat, byte[] buffer,
+				int offset, int scanlineStride) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setPixels(int dstx, int dsty, int w, int h, PixelReader reader, int srcx, int srcy) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@Test
+	public void testTilesMatchOneImage() {
+		int size = 2 * TileRasterizer.TILE_SIZE + 40;
+		int seam = TileRasterizer.TILE_SIZE;
+		PaintModel model = new PaintModel();
+		// Shapes whose bounds start on a seam, so only half their stroke
+		// crosses it
+		model.addCommand(new RectangleCommand(new Point(seam, 10), new Point(seam + 60, 60)));
+		model.addCommand(new CircleCommand(new Point(60, seam + 30), 30));
+		SquiggleCommand squiggle = new SquiggleCommand();
+		squiggle.setColor(Color.BLACK);
+		squiggle.add(2 * seam, 2 * seam);
+		squiggle.add(2 * seam + 30, 2 * seam + 10);
+		squiggle.add(seam + 20, 2 * seam + 30);
+		model.addCommand(squiggle);
+
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+		Java2DPaintRenderer r = new Java2DPaintRenderer(image);
+		model.executeAll(r);
+		r.dispose();
+
+		IntPixelWriter writer = new IntPixelWriter(size, size);
+		new TileRasterizer(new ForkJoinPool(2)).render(model, model.getCommandCount(), writer, size, size);
+		int[] expected = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] != writer.pixels[i])
+				fail("pixel " + i % size + "," + i / size);
+		}
+	}
+}
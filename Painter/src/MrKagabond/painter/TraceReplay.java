@@ -0,0 +1,204 @@
+package MrKagabond.painter;
+
+import java.io.File;
+import java.io.IOException;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.input.MouseEvent;
+
+/**
+ * Replays a MouseTrace into a PaintPanel, through PaintPanel.handle and the
+ * strategies the trace chose, and measures it: events a second, repaints,
+ * and the worst time from an event that changed the drawing to the end of
+ * the frame that showed it.
+ *
+ * Events are sent from an AnimationTimer on the FX thread, so frames are
+ * drawn in between as they would be for a user. At full speed each pulse
+ * sends events for up to half a 60 Hz frame; in real time each pulse sends
+ * the events that are due, and latency counts from when they were due.
+ *
+ * Usage: TraceReplay trace [drawing]
+ *
+ * replays without a window, straight into the strategies at full speed, for
+ * the cost of the model side alone.
+ */
+public class TraceReplay {
+	private static final long PULSE_BUDGET = 8000000; // ns of events per pulse at full speed
+
+	public enum Pace {
+		FULL_SPEED, REAL_TIME
+	}
+
+	private MouseTrace trace;
+	private PaintPanel panel;
+	private Pace pace;
+	private Runnable onFinished;
+
+	private int next = 0;
+	private long startTime = -1, endTime = -1;
+	private long pending = -1; // when the oldest event not yet on screen was due
+	private long worstLatency = 0;
+	private long startFrames;
+
+	private AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			TraceReplay.this.pulse();
+		}
+	};
+	private Runnable frameListener = () -> this.frameShown();
+
+	public TraceReplay(MouseTrace trace, PaintPanel panel, Pace pace) {
+		this.trace = trace;
+		this.panel = panel;
+		this.pace = pace;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: TraceReplay trace [drawing]");
+			System.exit(2);
+		}
+		MouseTrace trace = MouseTrace.load(new File(args[0]));
+		PaintModel model = new PaintModel();
+		if (args.length > 1) {
+			PaintFileOpener opener = new PaintFileOpener();
+			if (!opener.open(new File(args[1]), model)) {
+				System.err.println(args[1] + ": " + opener.getErrorMessage());
+				System.exit(1);
+			}
+		}
+		long[] notifications = new long[1];
+		model.addListener(event -> notifications[0]++);
+
+		for (int round = 0; round < 5; round++) {
+			ShapeManipulatorStrategy strategy = new ShapeManipulatorStrategy(model);
+			int commands = model.getCommandCount();
+			notifications[0] = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < trace.size(); i++) {
+				MouseEvent event = trace.getEvent(i);
+				if (event == null) {
+					strategy = trace.createStrategy(i, model);
+				} else {
+					strategy.handle(event);
+				}
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("%d events in %.3f s, %.0f events/s, %d commands added, %d notifications%n",
+					trace.getEventCount(), seconds, trace.getEventCount() / seconds,
+					model.getCommandCount() - commands, notifications[0]);
+			while (model.getCommandCount() > commands) {
+				model.removeLastCommand();
+			}
+		}
+	}
+
+	/**
+	 * Run r on the FX thread once the replay is finished.
+	 */
+	public void setOnFinished(Runnable r) {
+		this.onFinished = r;
+	}
+
+	public void start() {
+		this.startFrames = this.panel.getFrameCount();
+		this.panel.addFrameListener(this.frameListener);
+		this.timer.start();
+	}
+
+	public void stop() {
+		if (this.endTime >= 0)
+			return;
+		this.endTime = System.nanoTime();
+		this.timer.stop();
+		this.panel.removeFrameListener(this.frameListener);
+		if (this.onFinished != null) {
+			this.onFinished.run();
+		}
+	}
+
+	public boolean isFinished() {
+		return this.endTime >= 0;
+	}
+
+	private void pulse() {
+		long pulseStart = System.nanoTime();
+		if (this.startTime < 0) {
+			this.startTime = pulseStart;
+		}
+		while (this.next < this.trace.size()) {
+			long due;
+			if (this.pace == Pace.REAL_TIME) {
+				due = this.startTime + this.trace.getTime(this.next);
+				if (due > pulseStart)
+					break;
+			} else {
+				due = System.nanoTime();
+				if (due - pulseStart > PULSE_BUDGET)
+					break;
+			}
+			this.dispatch(this.next++, due);
+		}
+		if (this.next == this.trace.size() && this.pending < 0) {
+			this.stop();
+		}
+	}
+
+	private void dispatch(int i, long due) {
+		MouseEvent event = this.trace.getEvent(i);
+		if (event == null) {
+			this.panel.setShapeManipulatorStrategy(this.trace.createStrategy(i, this.panel.getPaintModel()));
+			return;
+		}
+		long notifications = this.panel.getNotificationCount();
+		this.panel.handle(event);
+		if (this.pending < 0 && this.panel.getNotificationCount() != notifications) {
+			this.pending = due;
+		}
+	}
+
+	private void frameShown() {
+		if (this.pending < 0)
+			return;
+		this.worstLatency = Math.max(this.worstLatency, System.nanoTime() - this.pending);
+		this.pending = -1;
+		if (this.next == this.trace.size()) {
+			this.stop();
+		}
+	}
+
+	/**
+	 * @return events a second, so far or over the whole replay
+	 */
+	public double getEventsPerSecond() {
+		long end = this.endTime >= 0 ? this.endTime : System.nanoTime();
+		if (this.startTime < 0 || end == this.startTime)
+			return 0;
+		int events = 0;
+		for (int i = 0; i < this.next; i++) {
+			if (this.trace.getEvent(i) != null) {
+				events++;
+			}
+		}
+		return events / ((end - this.startTime) / 1e9);
+	}
+
+	public long getRepaintCount() {
+		return this.panel.getFrameCount() - this.startFrames;
+	}
+
+	/**
+	 * @return the worst time, in nanoseconds, from an event that changed the
+	 *         drawing to the end of the frame that showed it
+	 */
+	public long getWorstLatency() {
+		return worstLatency;
+	}
+
+	public String getReport() {
+		return String.format("%d events, %s: %.0f events/s, %d repaints, worst event to frame latency %.1f ms",
+				this.trace.getEventCount(), this.pace == Pace.REAL_TIME ? "real time" : "full speed",
+				this.getEventsPerSecond(), this.getRepaintCount(), this.worstLatency / 1e6);
+	}
+}
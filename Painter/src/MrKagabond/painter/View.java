@@ -1,35 +1,64 @@
 package MrKagabond.painter;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.SeparatorMenuItem;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
 
 public class View implements EventHandler<ActionEvent> {
 
 	private PaintModel paintModel;
+	private PaintHistory history;
+	private PaintJournal journal;
 	private PaintPanel paintPanel;
+	private PaintStats stats; // over JMX
 	private ShapeChooserPanel shapeChooserPanel;
+	private TaskProgressPanel taskProgressPanel;
 	private Stage stage;
 
+	// Opening and saving run here, one at a time. While one runs the drawing
+	// and the menu items that would change or replace it are disabled: a save
+	// works from a snapshot of the command list, but the commands in it can
+	// still be edited.
+	private ExecutorService fileExecutor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "Paint file");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private BooleanProperty busy = new SimpleBooleanProperty(false);
+	private ArrayList<MenuItem> editingItems = new ArrayList<MenuItem>();
+
 	public View(PaintModel model, Stage stage) {
 		this.stage = stage;
 		this.paintModel = model;
+		this.history = new PaintHistory(model);
 		initUI(stage);
+		this.stats = new PaintStats(this.paintPanel);
+		this.stats.register();
+		stage.addEventHandler(WindowEvent.WINDOW_HIDDEN, e -> this.stats.unregister());
 	}
 
 	public PaintModel getPaintModel() {
@@ -37,19 +66,38 @@ public class View implements EventHandler<ActionEvent> {
 	}
 
 	public void setPaintModel(PaintModel paintModel) {
+		this.history.detach();
 		this.paintModel = paintModel;
+		this.history = new PaintHistory(paintModel);
 		this.paintPanel.setPaintModel(paintModel);
+		if (this.journal != null) {
+			this.journal.attach(paintModel);
+		}
+	}
+
+	/**
+	 * Autosave the drawing, and each one after it, to journal.
+	 */
+	public void setJournal(PaintJournal journal) {
+		this.journal = journal;
+		journal.attach(this.paintModel);
+		this.stats.setJournal(journal);
 	}
 
 	private void initUI(Stage stage) {
 
 		this.paintPanel = new PaintPanel(this.paintModel);
 		this.shapeChooserPanel = new ShapeChooserPanel(this);
+		this.taskProgressPanel = new TaskProgressPanel();
+		this.taskProgressPanel.visibleProperty().bind(this.busy);
+		this.taskProgressPanel.managedProperty().bind(this.busy);
+		this.paintPanel.disableProperty().bind(this.busy);
 
 		BorderPane root = new BorderPane();
 		root.setTop(createMenuBar());
 		root.setCenter(this.paintPanel);
 		root.setLeft(this.shapeChooserPanel);
+		root.setBottom(this.taskProgressPanel);
 
 		Scene scene = new Scene(root);
 		stage.setScene(scene);
@@ -57,6 +105,10 @@ public class View implements EventHandler<ActionEvent> {
 		stage.show();
 	}
 
+	public PaintHistory getHistory() {
+		return history;
+	}
+
 	public PaintPanel getPaintPanel() {
 		return paintPanel;
 	}
@@ -78,14 +130,17 @@ public class View implements EventHandler<ActionEvent> {
 		menuItem = new MenuItem("New");
 		menuItem.setOnAction(this);
 		menu.getItems().add(menuItem);
+		this.editingItems.add(menuItem);
 
 		menuItem = new MenuItem("Open");
 		menuItem.setOnAction(this);
 		menu.getItems().add(menuItem);
+		this.editingItems.add(menuItem);
 
 		menuItem = new MenuItem("Save");
 		menuItem.setOnAction(this);
 		menu.getItems().add(menuItem);
+		this.editingItems.add(menuItem);
 
 		menu.getItems().add(new SeparatorMenuItem());
 
@@ -116,13 +171,60 @@ public class View implements EventHandler<ActionEvent> {
 		menuItem = new MenuItem("Undo");
 		menuItem.setOnAction(this);
 		menu.getItems().add(menuItem);
+		this.editingItems.add(menuItem);
 
 		menuItem = new MenuItem("Redo");
 		menuItem.setOnAction(this);
 		menu.getItems().add(menuItem);
+		this.editingItems.add(menuItem);
+
+		menuBar.getMenus().add(menu);
+
+		// A menu for View
+
+		menu = new Menu("View");
+
+		menuItem = new CheckMenuItem("Tiled Rendering");
+		menuItem.setOnAction(this);
+		menu.getItems().add(menuItem);
+
+		menuItem = new CheckMenuItem("Performance Overlay");
+		menuItem.setOnAction(this);
+		menu.getItems().add(menuItem);
+
+		menuBar.getMenus().add(menu);
+
+		// A menu for Tools
+
+		menu = new Menu("Tools");
+
+		menuItem = new CheckMenuItem("Record Mouse Trace");
+		menuItem.setOnAction(this);
+		menu.getItems().add(menuItem);
+		this.editingItems.add(menuItem);
+
+		menuItem = new MenuItem("Replay Mouse Trace");
+		menuItem.setOnAction(this);
+		menu.getItems().add(menuItem);
+		this.editingItems.add(menuItem);
+
+		menuItem = new MenuItem("Replay Mouse Trace in Real Time");
+		menuItem.setOnAction(this);
+		menu.getItems().add(menuItem);
+		this.editingItems.add(menuItem);
+
+		menu.getItems().add(new SeparatorMenuItem());
+
+		menuItem = new MenuItem("Copy Performance Report");
+		menuItem.setOnAction(this);
+		menu.getItems().add(menuItem);
 
 		menuBar.getMenus().add(menu);
 
+		for (MenuItem item : this.editingItems) {
+			item.disableProperty().bind(this.busy);
+		}
+
 		return menuBar;
 	}
 
@@ -141,18 +243,10 @@ public class View implements EventHandler<ActionEvent> {
 
 			if (file != null) {
 				System.out.println("Opening: " + file.getName() + "." + "\n");
-				BufferedReader br;
-				PaintModel paintModel = new PaintModel();
-				PaintFileParser parser = new PaintFileParser();
-				try {
-					br = new BufferedReader(new FileReader(file));
-					parser.parse(br, paintModel);
-				} catch (IOException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-
-				this.setPaintModel(paintModel);
+				Task<PaintModel> task = PaintFileTask.open(file, this.paintPanel.getMetrics());
+				// Only a completely parsed file replaces the drawing
+				task.setOnSucceeded(e -> this.setPaintModel(task.getValue()));
+				this.runFileTask(task);
 			}
 
 			else {
@@ -160,27 +254,122 @@ public class View implements EventHandler<ActionEvent> {
 			}
 		} else if (command.equals("Save")) {
 			FileChooser fc = new FileChooser();
+			FileChooser.ExtensionFilter binary = new FileChooser.ExtensionFilter("Paint File (*.paint)", "*.paint");
+			FileChooser.ExtensionFilter text = new FileChooser.ExtensionFilter("Paint Text File (*.txt)", "*.txt");
+			fc.getExtensionFilters().addAll(binary, text);
 			File file = fc.showSaveDialog(this.stage);
 
 			if (file != null) {
 				// This is where a real application would open the file.
 				System.out.println("Saving: " + file.getName() + "." + "\n");
-				try {
-					PrintWriter writer = new PrintWriter(file);
-					View.save(writer, this.paintModel);
-					file.renameTo(file);
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-				}
+				int version = fc.getSelectedExtensionFilter() == text ? 1 : 2;
+				this.runFileTask(PaintFileTask.save(this.paintModel.snapshot(), file, version,
+						this.paintPanel.getMetrics()));
 			} else {
 				System.out.println("Save command cancelled by user." + "\n");
 			}
 		} else if (command.equals("New")) {
 			// this.paintModel.reset();
 			this.setPaintModel(new PaintModel());
+		} else if (command.equals("Undo")) {
+			this.paintPanel.getShapeManipulatorStrategy().finish();
+			this.history.undo();
+		} else if (command.equals("Redo")) {
+			this.paintPanel.getShapeManipulatorStrategy().finish();
+			this.history.redo();
 		} else if (command.equals("Exit")) {
 			Platform.exit();
+		} else if (command.equals("Tiled Rendering")) {
+			boolean tiled = ((CheckMenuItem) event.getSource()).isSelected();
+			this.paintPanel.setRenderMode(tiled ? PaintPanel.RenderMode.TILED : PaintPanel.RenderMode.DIRECT);
+		} else if (command.equals("Performance Overlay")) {
+			this.paintPanel.setOverlayVisible(((CheckMenuItem) event.getSource()).isSelected());
+		} else if (command.equals("Copy Performance Report")) {
+			String report = PaintMetrics.report();
+			ClipboardContent content = new ClipboardContent();
+			content.putString(report);
+			Clipboard.getSystemClipboard().setContent(content);
+		} else if (command.equals("Record Mouse Trace")) {
+			if (((CheckMenuItem) event.getSource()).isSelected()) {
+				this.paintPanel.startRecording();
+			} else {
+				this.saveTrace(this.paintPanel.stopRecording());
+			}
+		} else if (command.equals("Replay Mouse Trace") || command.equals("Replay Mouse Trace in Real Time")) {
+			this.replayTrace(command.equals("Replay Mouse Trace") ? TraceReplay.Pace.FULL_SPEED
+					: TraceReplay.Pace.REAL_TIME);
+		}
+	}
+
+	private FileChooser traceChooser() {
+		FileChooser fc = new FileChooser();
+		fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("Mouse Trace (*.trace)", "*.trace"));
+		return fc;
+	}
+
+	private void saveTrace(MouseTrace trace) {
+		File file = this.traceChooser().showSaveDialog(this.stage);
+		if (file == null || trace == null)
+			return;
+		try {
+			trace.save(file);
+		} catch (IOException e) {
+			this.showError("Saving the trace failed", e);
+		}
+	}
+
+	/**
+	 * Replay a trace into the drawing, with the drawing and editing disabled
+	 * until it is done, then show what was measured.
+	 */
+	private void replayTrace(TraceReplay.Pace pace) {
+		File file = this.traceChooser().showOpenDialog(this.stage);
+		if (file == null)
+			return;
+		MouseTrace trace;
+		try {
+			trace = MouseTrace.load(file);
+		} catch (IOException e) {
+			this.showError("Opening the trace failed", e);
+			return;
 		}
+		ShapeManipulatorStrategy strategy = this.paintPanel.getShapeManipulatorStrategy();
+		TraceReplay replay = new TraceReplay(trace, this.paintPanel, pace);
+		replay.setOnFinished(() -> {
+			this.busy.set(false);
+			this.paintPanel.setShapeManipulatorStrategy(strategy);
+			Alert alert = new Alert(Alert.AlertType.INFORMATION, replay.getReport());
+			alert.setHeaderText(file.getName() + " replayed");
+			alert.initOwner(this.stage);
+			alert.show();
+		});
+		this.busy.set(true);
+		replay.start();
+	}
+
+	private void showError(String header, Throwable error) {
+		error.printStackTrace();
+		Alert alert = new Alert(Alert.AlertType.ERROR, String.valueOf(error.getMessage()));
+		alert.setHeaderText(header);
+		alert.initOwner(this.stage);
+		alert.show();
+	}
+
+	/**
+	 * Run an open or save task on the file executor, showing its progress and
+	 * reporting a failure.
+	 */
+	private void runFileTask(Task<?> task) {
+		this.busy.set(true);
+		this.taskProgressPanel.show(task);
+		EventHandler<WorkerStateEvent> done = e -> this.busy.set(false);
+		task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, done);
+		task.addEventHandler(WorkerStateEvent.WORKER_STATE_CANCELLED, done);
+		task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, e -> {
+			this.busy.set(false);
+			this.showError(task.getMessage() + " failed", task.getException());
+		});
+		this.fileExecutor.execute(task);
 	}
 
 	/**